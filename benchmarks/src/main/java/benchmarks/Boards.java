@@ -0,0 +1,87 @@
+package benchmarks;
+
+import core.GameState;
+
+import java.util.Random;
+
+/**
+ * Builds the boards used by the benchmarks. Every board comes from a fixed
+ * seed so runs can be compared with each other.
+ *
+ * @author Kelly Ellis
+ * @version 1.0
+ */
+final class Boards {
+
+    static final int WIDTH = 7;
+    static final int HEIGHT = 6;
+
+    private Boards() {
+    }
+
+    /**
+     * Makes random games that don't have a winner yet
+     *
+     * @param count How many games to make
+     * @param minMoves The fewest pieces on a board
+     * @param maxMoves The most pieces on a board
+     * @param seed The random seed
+     * @return Returns each game as its columns, from 0 to 6, in the order they were played
+     */
+    static int[][] randomGames(int count, int minMoves, int maxMoves, long seed) {
+        Random rand = new Random(seed);
+        int[][] games = new int[count][];
+        int made = 0;
+        while (made < count) {
+            int moves = minMoves + rand.nextInt(maxMoves - minMoves + 1);
+            int[] game = play(rand, moves);
+            if (game != null) {
+                games[made++] = game;
+            }
+        }
+        return games;
+    }
+
+    /**
+     * Makes full boards where nobody has won, which is the worst case for
+     * any win check that scans the whole board
+     *
+     * @param count How many games to make
+     * @param seed The random seed
+     * @return Returns each game as its columns in the order they were played
+     */
+    static int[][] drawnGames(int count, long seed) {
+        return randomGames(count, WIDTH * HEIGHT, WIDTH * HEIGHT, seed);
+    }
+
+    /**
+     * Plays random moves, giving up if someone wins
+     */
+    private static int[] play(Random rand, int moves) {
+        GameState state = new GameState();
+        int[] columns = new int[moves];
+        char player = 'X';
+        for (int i = 0; i < moves; i++) {
+            int column;
+            do {
+                column = rand.nextInt(WIDTH);
+            }
+            while (!state.canPlay(column));
+            state.drop(player, column);
+            if (state.isWin(player)) {
+                return null;
+            }
+            columns[i] = column;
+            player = player == 'X' ? 'O' : 'X';
+        }
+        return columns;
+    }
+
+    /**
+     * @param moves Number of pieces on the board
+     * @return Returns the player whose turn it is
+     */
+    static char toMove(int moves) {
+        return moves % 2 == 0 ? 'X' : 'O';
+    }
+}
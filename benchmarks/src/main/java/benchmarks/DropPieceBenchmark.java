@@ -0,0 +1,84 @@
+package benchmarks;
+
+import core.Connect4;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures Connect4.dropPiece the way the console plays: drop a piece, then
+ * check for a winner and a full board. Each operation plays a whole drawn
+ * game of 42 moves, so columns fill up to the top. playAndTakeBack plays
+ * the game and takes it back move by move, the way a search walks the tree,
+ * with the Zobrist hashes updated on every move.
+ *
+ * @author Kelly Ellis
+ * @version 1.0
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DropPieceBenchmark {
+
+    private static final int GAMES = 64;
+
+    private int[][] games;
+    private Connect4 full;
+    private final Connect4 reused = new Connect4();
+    private int next;
+
+    @Setup
+    public void setUp() {
+        games = Boards.drawnGames(GAMES, 7);
+
+        full = new Connect4();
+        int[] moves = Boards.drawnGames(1, 11)[0];
+        for (int m = 0; m < moves.length; m++) {
+            full.dropPiece(Boards.toMove(m), moves[m] + 1);
+        }
+    }
+
+    @Benchmark
+    public boolean playGame() {
+        int[] moves = games[next++ & (GAMES - 1)];
+        Connect4 game = new Connect4();
+        boolean over = false;
+        for (int m = 0; m < moves.length; m++) {
+            game.dropPiece(Boards.toMove(m), moves[m] + 1);
+            over |= game.checkWin() || game.boardIsFull();
+        }
+        return over;
+    }
+
+    @Benchmark
+    public long playAndTakeBack() {
+        int[] moves = games[next++ & (GAMES - 1)];
+        long keys = 0;
+        for (int m = 0; m < moves.length; m++) {
+            reused.dropPiece(Boards.toMove(m), moves[m] + 1);
+            keys += reused.getCanonicalHash();
+        }
+        for (int m = moves.length - 1; m >= 0; m--) {
+            reused.undoPiece(moves[m] + 1);
+        }
+        return keys;
+    }
+
+    @Benchmark
+    public boolean dropIntoFullColumn() {
+        // the board is full, so every drop is rejected
+        return full.dropPiece('X', (next++ % Boards.WIDTH) + 1);
+    }
+}
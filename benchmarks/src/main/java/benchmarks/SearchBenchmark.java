@@ -0,0 +1,116 @@
+package benchmarks;
+
+import core.Connect4;
+import core.Connect4ComputerPlayer;
+import core.Connect4Solver;
+import core.GameState;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the computer player's move choice and the exact solver. How long
+ * the computer player thinks is set by its time budget, not by how fast it
+ * searches, so the number to watch is the "nodes" counter, which JMH reports
+ * as search nodes per second.
+ * Each late game is solved from an empty transposition table, which is
+ * cleared before the call so clearing it isn't measured.
+ *
+ * @author Kelly Ellis
+ * @version 1.0
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class SearchBenchmark {
+
+    private static final int POSITIONS = 64;
+
+    private Connect4[] middleGames;
+    private Connect4ComputerPlayer[] players;
+    private GameState[] lateGames;
+    private int next;
+
+    /**
+     * Search nodes visited, reported per second
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Nodes {
+        public long nodes;
+
+        @Setup(Level.Iteration)
+        public void clear() {
+            nodes = 0;
+        }
+    }
+
+    /**
+     * The solver, with its transposition table emptied before every call
+     */
+    @State(Scope.Thread)
+    public static class Solver {
+        final Connect4Solver solver = new Connect4Solver(20);
+
+        @Setup(Level.Invocation)
+        public void clear() {
+            solver.reset();
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        int[][] middle = Boards.randomGames(POSITIONS, 8, 20, 3);
+        middleGames = new Connect4[POSITIONS];
+        players = new Connect4ComputerPlayer[POSITIONS];
+        for (int i = 0; i < POSITIONS; i++) {
+            middleGames[i] = new Connect4();
+            for (int m = 0; m < middle[i].length; m++) {
+                middleGames[i].dropPiece(Boards.toMove(m), middle[i][m] + 1);
+            }
+            players[i] = new Connect4ComputerPlayer(middleGames[i]);
+            players[i].setTimeBudget(10);
+        }
+
+        int[][] late = Boards.randomGames(POSITIONS, 26, 32, 5);
+        lateGames = new GameState[POSITIONS];
+        for (int i = 0; i < POSITIONS; i++) {
+            lateGames[i] = new GameState();
+            for (int m = 0; m < late[i].length; m++) {
+                lateGames[i].drop(Boards.toMove(m), late[i][m]);
+            }
+        }
+    }
+
+    @Benchmark
+    public int computerChooseColumn(Nodes counter) {
+        Connect4ComputerPlayer player = players[next++ & (POSITIONS - 1)];
+        int column = player.chooseColumn();
+        counter.nodes += player.getSearch().getNodes();
+        return column;
+    }
+
+    @Benchmark
+    public int solveLateGame(Solver cleared, Nodes counter) {
+        GameState state = lateGames[next++ & (POSITIONS - 1)];
+        Connect4Solver solver = cleared.solver;
+        long before = solver.getNodes();
+        int score = solver.solve(state, Boards.toMove(state.moveCount()));
+        counter.nodes += solver.getNodes() - before;
+        return score;
+    }
+}
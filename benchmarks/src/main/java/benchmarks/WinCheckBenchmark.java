@@ -0,0 +1,103 @@
+package benchmarks;
+
+import core.BitBoard;
+import core.GameState;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the win check run on every drop. checkWin, isWon and boardIsFull
+ * only read what the last drop recorded, so the work is in
+ * BitBoard.winsThrough, which GameState and SessionBoard both call when a
+ * piece lands. winsThrough checks the lines through the last piece of each
+ * board, isWin checks the whole board with shifts for comparison, and
+ * dropCheckUndo drops the last piece into a GameState, reads the winner and
+ * takes the piece back.
+ *
+ * "random" boards are random games in progress, "drawn" boards are full
+ * boards without a winner. Lines through the last piece are longest on
+ * drawn boards, so they're the slowest for winsThrough.
+ *
+ * @author Kelly Ellis
+ * @version 1.0
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class WinCheckBenchmark {
+
+    private static final int BOARDS = 1024;
+
+    @Param({"random", "drawn"})
+    public String boards;
+
+    // each board without its last piece, and the last piece
+    private GameState[] before;
+    private char[] lastPlayers;
+    private int[] lastColumns;
+    // the last mover's pieces with the last piece, and the last piece's bit
+    private long[] stones;
+    private long[] lastMoves;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        int[][] moves = boards.equals("drawn")
+                ? Boards.drawnGames(BOARDS, 42)
+                : Boards.randomGames(BOARDS, 1, 41, 42);
+        before = new GameState[BOARDS];
+        lastPlayers = new char[BOARDS];
+        lastColumns = new int[BOARDS];
+        stones = new long[BOARDS];
+        lastMoves = new long[BOARDS];
+        for (int i = 0; i < BOARDS; i++) {
+            int last = moves[i].length - 1;
+            before[i] = new GameState();
+            for (int m = 0; m < last; m++) {
+                before[i].drop(Boards.toMove(m), moves[i][m]);
+            }
+            lastPlayers[i] = Boards.toMove(last);
+            lastColumns[i] = moves[i][last];
+
+            GameState after = new GameState(before[i]);
+            after.drop(lastPlayers[i], lastColumns[i]);
+            stones[i] = after.stones(lastPlayers[i]);
+            lastMoves[i] = stones[i] ^ before[i].stones(lastPlayers[i]);
+        }
+    }
+
+    @Benchmark
+    public boolean winsThrough() {
+        int i = next++ & (BOARDS - 1);
+        return BitBoard.winsThrough(stones[i], lastMoves[i]);
+    }
+
+    @Benchmark
+    public boolean isWin() {
+        return BitBoard.isWin(stones[next++ & (BOARDS - 1)]);
+    }
+
+    @Benchmark
+    public boolean dropCheckUndo() {
+        int i = next++ & (BOARDS - 1);
+        GameState state = before[i];
+        state.drop(lastPlayers[i], lastColumns[i]);
+        boolean won = state.hasWinner();
+        state.undo(lastColumns[i]);
+        return won;
+    }
+}
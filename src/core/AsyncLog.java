@@ -0,0 +1,180 @@
+package core;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * This class is the log for Connect4HeadlessServer. Each message is one
+ * line of key=value pairs, such as
+ * time=2024-05-01T12:00:00Z level=info thread=main msg="Server started" port=8004
+ * so it can be searched and parsed by log tools.
+ *
+ * The line is put together on the calling thread and put on a queue, and one
+ * writer thread does all the writing. Logging never waits for the output; if
+ * the writer falls too far behind, lines are dropped and counted instead.
+ *
+ * @author Kelly Ellis
+ * @version 1.0
+ */
+public class AsyncLog implements Consumer<String>, Closeable {
+
+    // Lines waiting to be written
+    private static final int QUEUE_CAPACITY = 8192;
+
+    private final Writer out;
+    private final BlockingQueue<String> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final List<String> batch = new ArrayList<>();
+    private final LongAdder dropped = new LongAdder();
+    private final Thread writer;
+    private volatile boolean closed;
+
+    /**
+     * Creates a log and starts its writer thread
+     *
+     * @param out Where the lines are written, such as System.out
+     */
+    public AsyncLog(OutputStream out) {
+        this.out = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        writer = new Thread(this::writeLoop, "connect4-log");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Logs a plain message at info level, so the log can be handed to the
+     * servers as their Consumer of messages
+     */
+    public void accept(String message) {
+        info(message);
+    }
+
+    /**
+     * Logs a message at info level
+     *
+     * @param message What happened
+     * @param fields Extra keys and values, in pairs
+     */
+    public void info(String message, Object... fields) {
+        log("info", message, fields);
+    }
+
+    /**
+     * Logs a message at warn level
+     *
+     * @param message What went wrong
+     * @param fields Extra keys and values, in pairs
+     */
+    public void warn(String message, Object... fields) {
+        log("warn", message, fields);
+    }
+
+    /**
+     * @return Returns how many lines were dropped because the writer was too far behind
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * Writes the lines still queued and stops the writer thread
+     */
+    public void close() {
+        closed = true;
+        try {
+            writer.join();
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void log(String level, String message, Object[] fields) {
+        StringBuilder line = new StringBuilder(128);
+        line.append("time=").append(Instant.now())
+                .append(" level=").append(level)
+                .append(" thread=").append(Thread.currentThread().getName())
+                .append(" msg=");
+        appendValue(line, message);
+        for (int i = 0; i + 1 < fields.length; i += 2) {
+            line.append(' ').append(fields[i]).append('=');
+            appendValue(line, fields[i + 1]);
+        }
+        if (closed || !queue.offer(line.toString())) {
+            dropped.increment();
+        }
+    }
+
+    /**
+     * Numbers are written as they are, and text is quoted if it has spaces or quotes in it
+     */
+    private static void appendValue(StringBuilder line, Object value) {
+        String text = String.valueOf(value);
+        if (value instanceof Number || (!text.isEmpty() && text.indexOf(' ') < 0 && text.indexOf('"') < 0
+                && text.indexOf('=') < 0)) {
+            line.append(text);
+            return;
+        }
+        line.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                line.append('\\');
+            }
+            line.append(c == '\n' ? ' ' : c);
+        }
+        line.append('"');
+    }
+
+    private void writeLoop() {
+        long reportedDropped = 0;
+        while (!closed || !queue.isEmpty()) {
+            try {
+                String first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch);
+                for (String line : batch) {
+                    out.write(line);
+                    out.write('\n');
+                }
+                long droppedNow = dropped.sum();
+                if (droppedNow != reportedDropped) {
+                    out.write("time=" + Instant.now() + " level=warn thread=connect4-log msg=\"Log lines dropped\" total="
+                            + droppedNow + '\n');
+                    reportedDropped = droppedNow;
+                }
+                out.flush();
+            }
+            catch (IOException ex) {
+                // nowhere left to log to
+            }
+            catch (InterruptedException ex) {
+                return;
+            }
+            finally {
+                batch.clear();
+            }
+        }
+        try {
+            out.flush();
+        }
+        catch (IOException ex) {
+            // nowhere left to log to
+        }
+    }
+}
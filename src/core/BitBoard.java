@@ -0,0 +1,228 @@
+package core;
+
+/**
+ * This is the bitboard engine for the Connect4 game. A position is kept as
+ * one long per player plus the mask of every occupied spot, so dropping a piece
+ * and checking for a winner only take a few shifts and ANDs instead of
+ * scanning a 2D array.
+ *
+ * Each column uses 7 bits: 6 for the rows (bit 0 is the bottom row) and one
+ * empty sentinel bit on top, so shifted lines never wrap into the next column.
+ *
+ *  6 13 20 27 34 41 48
+ *  5 12 19 26 33 40 47
+ *  4 11 18 25 32 39 46
+ *  3 10 17 24 31 38 45
+ *  2  9 16 23 30 37 44
+ *  1  8 15 22 29 36 43
+ *  0  7 14 21 28 35 42
+ *
+ * @author Kelly Ellis
+ * @version 1.0
+ */
+public final class BitBoard {
+
+    public static final int WIDTH = 7;
+    public static final int HEIGHT = 6;
+
+    /** Bits used by one column, including the sentinel bit */
+    public static final int COLUMN_BITS = HEIGHT + 1;
+
+    /** Mask with the bottom spot of every column set */
+    public static final long BOTTOM_MASK = bottomRow();
+
+    /** Mask with every playable spot on the board set */
+    public static final long BOARD_MASK = BOTTOM_MASK * ((1L << HEIGHT) - 1);
+
+    private BitBoard() {
+    }
+
+    /**
+     * Mask of the bottom spot of a column
+     *
+     * @param column The column, from 0 to 6
+     * @return Returns the bit of the column's bottom spot
+     */
+    public static long bottomMask(int column) {
+        return 1L << (column * COLUMN_BITS);
+    }
+
+    /**
+     * Mask of the top spot of a column
+     *
+     * @param column The column, from 0 to 6
+     * @return Returns the bit of the column's top spot
+     */
+    public static long topMask(int column) {
+        return 1L << (HEIGHT - 1 + column * COLUMN_BITS);
+    }
+
+    /**
+     * Mask of every spot in a column
+     *
+     * @param column The column, from 0 to 6
+     * @return Returns the bits of the whole column
+     */
+    public static long columnMask(int column) {
+        return ((1L << HEIGHT) - 1) << (column * COLUMN_BITS);
+    }
+
+    /**
+     * Bit of a spot on the board
+     *
+     * @param row The row, where 0 is the top row like in the printed board
+     * @param column The column, from 0 to 6
+     * @return Returns the bit that represents the spot
+     */
+    public static long cellMask(int row, int column) {
+        return 1L << (HEIGHT - 1 - row + column * COLUMN_BITS);
+    }
+
+    /**
+     * Checks if a column still has an empty spot
+     *
+     * @param mask Mask of every occupied spot
+     * @param column The column, from 0 to 6
+     * @return Returns true if a piece can be dropped into the column
+     */
+    public static boolean canPlay(long mask, int column) {
+        return (mask & topMask(column)) == 0;
+    }
+
+    /**
+     * Finds the spot a piece lands on when dropped into a column. Adding the
+     * bottom bit carries up through the occupied spots to the first empty one.
+     *
+     * @param mask Mask of every occupied spot
+     * @param column The column, from 0 to 6
+     * @return Returns the bit the piece lands on, or 0 if the column is full
+     */
+    public static long dropMask(long mask, int column) {
+        return (mask + bottomMask(column)) & columnMask(column);
+    }
+
+    /**
+     * Checks a player's pieces for 4 in a row in a column, in a row or
+     * diagonally. Shifting by 1 checks columns, by 7 rows, and by 6 and 8 the
+     * two diagonals.
+     *
+     * @param stones Mask of one player's pieces
+     * @return Returns true if the pieces contain 4 in a row
+     */
+    public static boolean isWin(long stones) {
+        long m = stones & (stones >> 1);
+        if ((m & (m >> 2)) != 0) {
+            return true;
+        }
+        m = stones & (stones >> COLUMN_BITS);
+        if ((m & (m >> (2 * COLUMN_BITS))) != 0) {
+            return true;
+        }
+        m = stones & (stones >> (COLUMN_BITS - 1));
+        if ((m & (m >> (2 * (COLUMN_BITS - 1)))) != 0) {
+            return true;
+        }
+        m = stones & (stones >> (COLUMN_BITS + 1));
+        return (m & (m >> (2 * (COLUMN_BITS + 1)))) != 0;
+    }
+
+    /**
+     * Checks only the 4 lines through the piece that was just placed, by
+     * walking out from it in both directions along each line. This is what
+     * the games use after every move, instead of checking the whole board.
+     *
+     * @param stones Mask of the pieces of the player who just moved, including the new one
+     * @param move The bit of the piece that was just placed
+     * @return Returns true if the new piece made 4 in a row
+     */
+    public static boolean winsThrough(long stones, long move) {
+        // vertical, then horizontal and the two diagonals
+        return countLine(stones, move, 1) >= 4
+                || countLine(stones, move, COLUMN_BITS) >= 4
+                || countLine(stones, move, COLUMN_BITS - 1) >= 4
+                || countLine(stones, move, COLUMN_BITS + 1) >= 4;
+    }
+
+    /**
+     * Counts the pieces in a row through a spot along one direction. The
+     * sentinel bits and the bits above the board are never set, so the walk
+     * always stops at the edge of the board.
+     */
+    private static int countLine(long stones, long move, int shift) {
+        int count = 1;
+        for (long bit = move << shift; (stones & bit) != 0; bit <<= shift) {
+            count++;
+        }
+        for (long bit = move >>> shift; (stones & bit) != 0; bit >>>= shift) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Checks if every spot on the board is taken
+     *
+     * @param mask Mask of every occupied spot
+     * @return Returns true if the board is full
+     */
+    public static boolean isFull(long mask) {
+        return mask == BOARD_MASK;
+    }
+
+    /**
+     * Finds every empty spot that would give a player 4 in a row. Each line
+     * direction is checked for the 3 spots next to an empty one, on both sides.
+     *
+     * @param stones Mask of one player's pieces
+     * @param mask Mask of every occupied spot
+     * @return Returns the empty spots that would win the game for that player
+     */
+    public static long winningSpots(long stones, long mask) {
+        // vertical, only from above
+        long spots = (stones << 1) & (stones << 2) & (stones << 3);
+
+        // horizontal and both diagonals
+        for (int shift = COLUMN_BITS - 1; shift <= COLUMN_BITS + 1; shift++) {
+            long p = (stones << shift) & (stones << (2 * shift));
+            spots |= p & (stones << (3 * shift));
+            spots |= p & (stones >> shift);
+            p = (stones >> shift) & (stones >> (2 * shift));
+            spots |= p & (stones << shift);
+            spots |= p & (stones >> (3 * shift));
+        }
+        return spots & (BOARD_MASK ^ mask);
+    }
+
+    /**
+     * Mask of the spots a piece would land on in every column that isn't full
+     *
+     * @param mask Mask of every occupied spot
+     * @return Returns the playable spots
+     */
+    public static long playableSpots(long mask) {
+        return (mask + BOTTOM_MASK) & BOARD_MASK;
+    }
+
+    /**
+     * Flips a bitboard left to right, so column 0 swaps with column 6
+     *
+     * @param bits Any bitboard, or a key that keeps each column in its own 7 bits
+     * @return Returns the mirrored bitboard
+     */
+    public static long mirror(long bits) {
+        long mirrored = 0;
+        for (int column = 0; column < WIDTH; column++) {
+            long columnBits = (bits >>> (column * COLUMN_BITS)) & ((1L << COLUMN_BITS) - 1);
+            mirrored |= columnBits << ((WIDTH - 1 - column) * COLUMN_BITS);
+        }
+        return mirrored;
+    }
+
+    private static long bottomRow() {
+        long bottom = 0;
+        for (int column = 0; column < WIDTH; column++) {
+            bottom |= bottomMask(column);
+        }
+        return bottom;
+    }
+}
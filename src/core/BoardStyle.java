@@ -0,0 +1,69 @@
+package core;
+
+import javafx.scene.CacheHint;
+import javafx.scene.Node;
+import javafx.scene.effect.InnerShadow;
+import javafx.scene.paint.Color;
+import javafx.scene.paint.Paint;
+
+/**
+ * This class holds the paints and effects the Connect4 boards are drawn
+ * with. They're made once and shared by every cell and disc of
+ * Connect4Client and Connect4GUI, so showing a piece only changes the fill
+ * of a disc that's already in the scene instead of making new nodes and
+ * effects.
+ *
+ * Nodes with an effect are cached as bitmaps with cache(), so JavaFX draws
+ * the effect once instead of on every frame. A disc moving during the drop
+ * animation is then only a bitmap being moved.
+ *
+ * @author Kelly Ellis
+ * @version 1.0
+ */
+public final class BoardStyle {
+
+    /** Player 1's discs */
+    public static final Color RED = Color.RED;
+    /** Player 2's discs */
+    public static final Color YELLOW = Color.YELLOW;
+    /** A column the mouse is over */
+    public static final Color HIGHLIGHT = Color.rgb(50, 200, 50, 0.3);
+
+    /** The shading on every disc */
+    public static final InnerShadow DISC_SHADOW = shadow(5, 5);
+    /** The shading on every cell of the client's board */
+    public static final InnerShadow CELL_SHADOW = shadow(4, 4);
+    /** The shading on the GUI's board */
+    public static final InnerShadow BOARD_SHADOW = shadow(10, 0);
+
+    private BoardStyle() {
+    }
+
+    /**
+     * @param token The player's game piece, either X or O
+     * @return Returns the paint for that player's discs
+     */
+    public static Paint discPaint(char token) {
+        return token == 'X' ? RED : YELLOW;
+    }
+
+    /**
+     * Caches a node as a bitmap, so its effect is only drawn again when the
+     * node itself changes, and moving it doesn't redraw it at all
+     *
+     * @param node The node to cache
+     * @return Returns the node
+     */
+    public static <T extends Node> T cache(T node) {
+        node.setCache(true);
+        node.setCacheHint(CacheHint.SPEED);
+        return node;
+    }
+
+    private static InnerShadow shadow(double offsetX, double offsetY) {
+        InnerShadow shadow = new InnerShadow();
+        shadow.setOffsetX(offsetX);
+        shadow.setOffsetY(offsetY);
+        return shadow;
+    }
+}
@@ -4,6 +4,13 @@ package core;
  * This is the class for the Connect4 game. It creates a board
  * for the game to be played on, and holds the methods that allow
  * the players to drop their game pieces, and check for a winner.
+ * The standard 7x6 game is played on a GameState bitboard, and any other
+ * Rules on a VariantBoard.
+ *
+ * The game keeps a Zobrist hash of its position, and of the position's mirror
+ * image, up to date as pieces are dropped and taken back. The smaller of the
+ * two is a key that's the same for a position and its mirror image, so caches
+ * of positions only need to keep one of them.
  *
  * @author Kelly Ellis
  * @version 1.0
@@ -11,50 +18,104 @@ package core;
 
 public class Connect4 {
 
-    public static char[][] board;
+    private final Rules rules;
+    private final GameState state = new GameState();
+    // the board for any other size, or null for the standard game
+    private final VariantBoard variant;
+    // Zobrist hashes of the position and of its mirror image
+    private long hash;
+    private long mirrorHash;
 
     /**
-     *  Constructor that creates a 2D array as the game board with 42 spaces,
-     *  and initializes it with spaces that represent each 'hole' on the board.
+     *  Constructor that creates an empty game board with 42 spaces. Every
+     *  Connect4 has its own board, so many games can be played at once.
      */
     public Connect4() {
-        board = new char[6][7];
+        this(Rules.STANDARD);
+    }
 
-        for (int i = 0; i < board.length; i++) {
-            for (int j = 0; j < board[i].length; j++) {
-                board[i][j] = ' ';
-            }
+    /**
+     * Constructor that creates an empty game board for a variant
+     *
+     * @param rules The size of the board and how many in a row win
+     */
+    public Connect4(Rules rules) {
+        this.rules = rules;
+        variant = rules.isStandard() ? null : new VariantBoard(rules);
+    }
+
+    /**
+     * @return Returns the rules this game is played by
+     */
+    public Rules getRules() {
+        return rules;
+    }
+
+    /**
+     * @return Returns the state of this game's board. Only the standard game is played on it.
+     */
+    public GameState getState() {
+        return state;
+    }
+
+    /**
+     * Empties the board so a new game can be played
+     */
+    public void reset() {
+        if (variant != null) {
+            variant.reset();
+        }
+        else {
+            state.reset();
         }
+        hash = 0;
+        mirrorHash = 0;
     }
 
     /**
-     * Prints the game board by iterating through each index in the 2D array,
+     * Prints the game board by iterating through each spot on the board,
      * and adds a | delimiter around spaces
      */
     public void printBoard() {
-        for (int i = 0; i < board.length; i++) {
+        for (int i = 0; i < rules.getHeight(); i++) {
             System.out.print("|");
-            for (int j = 0; j < board[i].length; j++) {
-                System.out.printf("%c|", board[i][j]);
+            for (int j = 0; j < rules.getWidth(); j++) {
+                System.out.printf("%c|", pieceAt(i, j));
             }
             System.out.println();
         }
     }
 
     /**
-     * Makes sure the board isn't full by checking the top row for an empty spot
+     * Gets the game piece at a spot on the board
+     *
+     * @param row The row, where 0 is the top row
+     * @param column The column, starting at 0
+     * @return Returns X or O if the spot is taken, or a space if it's empty
+     */
+    public char pieceAt(int row, int column) {
+        return variant != null ? variant.pieceAt(row, column) : state.pieceAt(row, column);
+    }
+
+    /**
+     * @param column The column, starting at 0
+     * @return Returns how many pieces are in the column
+     */
+    public int columnHeight(int column) {
+        if (variant != null) {
+            return variant.columnHeight(column);
+        }
+        return Long.bitCount(state.mask() & BitBoard.columnMask(column));
+    }
+
+    /**
+     * Makes sure the board isn't full
      *
      * @return Returns false if there is at least 1 empty spot left, returns true
      * if the board is full.
      */
     public boolean boardIsFull() {
-        for (int i = 0; i < board[0].length; i++) {
-            if (board[0][i] == ' ') {
-                // spot is empty
-                return false;
-            }
-        }
-        return true;
+        return variant != null ? variant.isFull() : state.isFull();
     }
 
     /**
@@ -66,96 +127,82 @@ public class Connect4 {
      * false otherwise.
      */
     public boolean dropPiece(char player, int column) {
-        boolean drop = false;
-        if (column < 0 || column > 7) {
+        if (column < 1 || column > rules.getWidth()) {
             throw new ArrayIndexOutOfBoundsException("Entered column is invalid.");
         }
-        // Iterates over the given column's rows to find the top-most
-        // available empty spot, and then drops that player's game
-        // piece in that spot
-        for (int i = board.length - 1; i >= 0; i--) {
-            if (board[i][column-1] == ' ') {
-                board[i][column-1] = player;
-//            if (board[i][column] == ' ') {
-//                board[i][column] = player;
-                drop = true;
-                break;
-            }
+        int c = column - 1;
+        boolean dropped = variant != null ? variant.drop(player, c) : state.drop(player, c);
+        if (dropped) {
+            toggle(player, columnHeight(c) - 1, c);
         }
-        return drop;
+        return dropped;
     }
 
     /**
-     * Checks for a winner of the game. A player can win by getting 4
-     * pieces consecutively in a row, in a column, or diagonally.
+     * Takes the last game piece back out of a column, undoing dropPiece
      *
-     * @return Returns true if there are either 4 X's or 4 O's consecutively
-     * in a row, column, or diagonal. Returns false otherwise.
+     * @param column The column, from 1 like dropPiece
+     * @return Returns true if a piece was taken back, false if the column is empty
      */
-    public boolean checkWin() {
-
-        // Variables for each possible way to win, initialized to false
-        boolean fourInACol = false;
-        boolean fourInARow = false;
-        boolean fourDiagonalTRBL = false;
-        boolean fourDiagonalTLBR = false;
-
-        // Checks columns for possible winner
-        for (int i = 0; i <= 2; i++) {
-            for (int j = 0; j <= 6; j++) {
-                // Makes sure that there are 4 of the same game pieces in a column across 4 rows
-                if (board[i][j] == board[i + 1][j] && board[i][j] == board[i + 2][j]
-                        && board[i][j] == board[i + 3][j] && board[i][j] != ' ') {
-                    fourInACol = true;
-                    break;
-                }
-            }
-        }
-
-        // Checks rows for possible winner
-        for (int i = 0; i <= 5; i++) {
-            // Iterates over columns
-            for (int j = 0; j <= 3; j++) {
-                // Makes sure that there are 4 of the same game pieces in a row across 4 columns
-                if (board[i][j] == board[i][j + 1] && board[i][j] == board[i][j + 2]
-                        && board[i][j] == board[i][j + 3] && board[i][j] != ' ') {
-                    fourInARow = true;
-                    break;
-                }
-            }
-        }
-
-        // Checks diagonal (from top right to bottom left) for possible winner
-        for (int i = 0; i <= 2; i++) {
-            for (int j = 3; j <= 6; j++) {
-                // Makes sure that there are 4 of the same game pieces consecutively
-                if (board[i][j] == board[i + 1][j - 1] && board[i][j] == board[i + 2][j - 2]
-                        && board[i][j] == board[i + 3][j  - 3] && board[i][j] != ' ') {
-                    fourDiagonalTRBL = true;
-                    break;
-                }
-            }
+    public boolean undoPiece(int column) {
+        if (column < 1 || column > rules.getWidth()) {
+            throw new ArrayIndexOutOfBoundsException("Entered column is invalid.");
         }
-
-        // Checks diagonal (from top left to bottom right) for possible winner
-        for (int i = 0; i <= 2; i++) {
-            for (int j = 0; j <= 3; j++) {
-                // Makes sure that there are 4 of the same game pieces consecutively in a diagonal
-                if (board[i][j] == board[i + 1][j + 1] && board[i][j] == board[i + 2][j + 2]
-                        && board[i][j] == board[i + 3][j + 3] && board[i][j] != ' ') {
-                    fourDiagonalTLBR = true;
-                    break;
-                }
-            }
+        int c = column - 1;
+        int height = columnHeight(c);
+        if (height == 0) {
+            return false;
         }
-
-        // If any of the booleans are true, there's a winner (return true)
-        if (fourInARow || fourInACol || fourDiagonalTLBR || fourDiagonalTRBL) {
-            return true;
+        char player = pieceAt(rules.getHeight() - height, c);
+        if (variant != null) {
+            variant.undo(c);
         }
         else {
-            return false;
+            state.undo(c);
         }
+        toggle(player, height - 1, c);
+        return true;
+    }
 
+    /**
+     * Adds or removes a piece from both hashes
+     *
+     * @param row The row counted from the bottom
+     */
+    private void toggle(char player, int row, int column) {
+        hash ^= Zobrist.piece(player, row, column);
+        mirrorHash ^= Zobrist.piece(player, row, rules.getWidth() - 1 - column);
+    }
+
+    /**
+     * @return Returns the Zobrist hash of the position, which is 0 for an empty board
+     */
+    public long getHash() {
+        return hash;
+    }
+
+    /**
+     * Folds the Zobrist hash with its mirror image's, so a position and its
+     * mirror share a hash. It works for every variant and costs nothing to
+     * keep up to date, but different positions can share a hash. For the
+     * standard game, use GameState.canonicalKey when a collision would be
+     * wrong, such as in anything stored on disk.
+     *
+     * @return Returns a hash of the position that's the same for its mirror image
+     */
+    public long getCanonicalHash() {
+        return Math.min(hash, mirrorHash);
+    }
+
+    /**
+     * Checks for a winner of the game. A player can win by getting 4
+     * pieces consecutively in a row, in a column, or diagonally, or however
+     * many the variant's rules ask for.
+     *
+     * @return Returns true if there are either 4 X's or 4 O's consecutively
+     * in a row, column, or diagonal. Returns false otherwise.
+     */
+    public boolean checkWin() {
+        return variant != null ? variant.hasWinner() : state.hasWinner();
     }
 }
@@ -0,0 +1,511 @@
+package core;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * This class is the thread-per-session version of the Connect4 Server. Each
+ * session runs HandleASession on its own worker thread and talks to its
+ * players with blocking streams. It has no window of its own, so it runs the
+ * same under Connect4Server and Connect4HeadlessServer.
+ *
+ * A player who loses their connection can come back with their resume
+ * token. The lobby hands them to their session, which sends them a snapshot
+ * of the game and carries on. Spectators can watch any session through the
+ * SpectatorHub, which writes to them on its own thread so a slow spectator
+ * never holds up the players.
+ *
+ * @author Kelly Ellis, Hassan/Bansal
+ * @version 1.0
+ */
+public class Connect4BlockingServer {
+
+    private final int port;
+    private final Rules rules;
+    private final ServerMetrics metrics;
+    private final PlayerRatings ratings;
+    private final GameLog games;
+    private final Consumer<String> log;
+    private final ThreadPoolExecutor sessions;
+    private final ResumeTokens<HandleASession> tokens = new ResumeTokens<>();
+    private int sessionNo = 1;
+    private volatile ServerSocketChannel serverSocket;
+    private volatile boolean closed;
+
+    /**
+     * Creates the server. It doesn't listen for players until start() is called.
+     *
+     * @param port The port players connect to
+     * @param rules The size of the board and how many in a row win
+     * @param maxSessions Most games that can be played at once
+     * @param metrics The counters to report moves and games to
+     * @param ratings The player ratings used for pairing and updated when games end
+     * @param games The log to keep finished games in, or null to not keep them
+     * @param log Where to send the server's messages
+     */
+    public Connect4BlockingServer(int port, Rules rules, int maxSessions, ServerMetrics metrics,
+            PlayerRatings ratings, GameLog games, Consumer<String> log) {
+        this.port = port;
+        this.rules = rules;
+        this.metrics = metrics;
+        this.ratings = ratings;
+        this.games = games;
+        this.log = log;
+        // Runs each session on its own worker. The hand-off queue doesn't hold any
+        // sessions, so once every worker is busy new sessions are turned away.
+        sessions = new ThreadPoolExecutor(0, maxSessions, 60, TimeUnit.SECONDS, new SynchronousQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "connect4-session");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /**
+     * Starts the lobby, then accepts players in this thread. Each pair the
+     * lobby makes gets its own session thread. Returns once close() is called.
+     *
+     * @throws IOException If the server socket can't be opened
+     */
+    public void start() throws IOException {
+        try (ServerSocketChannel serverSocket = ServerSocketChannel.open()) {
+            this.serverSocket = serverSocket;
+            serverSocket.bind(new InetSocketAddress(port));
+            log.accept("Server started at socket " + port + ", playing " + rules);
+
+            SpectatorHub spectators = new SpectatorHub(log);
+            spectators.start();
+            Matchmaker lobby = new Matchmaker((player1, player2) -> {
+                int session = sessionNo++;
+                SpectatorHub.Broadcast broadcast = spectators.open(session, rules);
+                try {
+                    sessions.execute(new HandleASession(player1.socket(), player2.socket(), rules, metrics,
+                            ratings, games, tokens, broadcast));
+                }
+                catch (RejectedExecutionException ex) {
+                    // server is full, drop both players
+                    broadcast.finish(GameRecord.ABANDONED);
+                    metrics.gameRejected();
+                    closeQuietly(player1);
+                    closeQuietly(player2);
+                    log.accept("Server is full, session " + session + " was rejected");
+                }
+            }, (player, token) -> {
+                HandleASession session = tokens.find(token);
+                if (session == null || !session.resume(token, player)) {
+                    // the game is over or the token is wrong
+                    closeQuietly(player);
+                }
+            }, spectators::watch, log);
+            lobby.start();
+
+            // players wait in the lobby until they're paired, so accepting never waits on anyone
+            while (!closed) {
+                SocketChannel player = serverSocket.accept();
+                metrics.connectionAccepted();
+                lobby.add(player, ratings.rating(PlayerRatings.idOf(player)));
+            }
+        }
+        catch (ClosedChannelException ex) {
+            if (!closed) {
+                throw ex;
+            }
+        }
+    }
+
+    /**
+     * Stops accepting players and makes start() return. Games that are still
+     * being played aren't waited for.
+     *
+     * @throws IOException If the server socket can't be closed
+     */
+    public void close() throws IOException {
+        closed = true;
+        ServerSocketChannel socket = serverSocket;
+        if (socket != null) {
+            socket.close();
+        }
+    }
+
+    private static void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        }
+        catch (IOException ex) {
+            // already closed
+        }
+    }
+
+    /**
+     * Handles new sessions with 2 players. Every session has its own board.
+     * If a player's connection drops, the session waits for them to resume
+     * instead of ending the game, but never longer than the resume timeout.
+     * The player to move has the idle timeout to make their move.
+     */
+    public static class HandleASession implements Runnable {
+        private final Rules rules;
+        private final ServerMetrics metrics;
+        private final PlayerRatings ratings;
+        private final GameLog games;
+        private final ResumeTokens<HandleASession> tokens;
+        private final SpectatorHub.Broadcast broadcast;
+        // player 1 then player 2
+        private final Seat[] seats;
+
+        private final SessionBoard board;
+        private volatile int moves;
+        private int result = GameRecord.ABANDONED;
+        private boolean over;
+
+        /**
+         * Creates the game board with 2 players
+         * @param player1 First player to connect to server
+         * @param player2 Second player to connect to server
+         * @param rules The size of the board and how many in a row win
+         * @param metrics The server's counters to report moves and games to
+         * @param ratings The player ratings to update when the game ends
+         * @param games The log to keep the finished game in, or null to not keep it
+         * @param tokens Where the players' resume tokens are kept while the game is played
+         * @param broadcast Where the moves are sent for spectators
+         */
+        public HandleASession(Socket player1, Socket player2, Rules rules, ServerMetrics metrics,
+                PlayerRatings ratings, GameLog games, ResumeTokens<HandleASession> tokens,
+                SpectatorHub.Broadcast broadcast) {
+            this.rules = rules;
+            this.metrics = metrics;
+            this.ratings = ratings;
+            this.games = games;
+            this.tokens = tokens;
+            this.broadcast = broadcast;
+            this.board = new SessionBoard(rules);
+            seats = new Seat[] {new Seat(1, 'X', player1), new Seat(2, 'O', player2)};
+        }
+
+        /**
+         * @return Returns the number of moves made in this session so far
+         */
+        public int getMoveCount() {
+            return moves;
+        }
+
+        /**
+         * The run method for the thread. Sets up I/O streams for each player and
+         * controls the game logic/flow. Receives moves from each player and continuously
+         * checks for wins/ties and updates each player with the other player's moves.
+         */
+        public void run() {
+            metrics.gameStarted();
+            long started = System.nanoTime();
+            long startTime = System.currentTimeMillis();
+            try {
+                // tell each player which player they are, the rules and their resume token,
+                // and let player1 know to start
+                synchronized (this) {
+                    for (Seat seat : seats) {
+                        seat.token = tokens.issue(this);
+                        Socket socket = seat.socket;
+                        try {
+                            connect(seat, socket);
+                            seat.out.hello(seat.player).rules(rules).session(seat.token);
+                            if (seat.player == 1) {
+                                seat.out.start();
+                            }
+                            seat.out.flush();
+                        }
+                        catch (IOException ex) {
+                            lost(seat, socket);
+                        }
+                    }
+                }
+
+                // Continuously serve the players and determine and report
+                // the game status to the players. Each player gets one frame per turn.
+                int turn = 0;
+                while (!over) {
+                    Seat mover = seats[turn];
+                    Seat other = seats[1 - turn];
+                    FrameReader in = readMove(mover);
+                    if (in == null) {
+                        // gone too long, the game is abandoned
+                        break;
+                    }
+                    long received = System.nanoTime();
+                    int column = in.arg();
+
+                    synchronized (this) {
+                        int row = board.drop(column, mover.piece);
+                        if (row == SessionBoard.ILLEGAL) {
+                            // the column is full or not on the board, it's still this player's turn
+                            sendStatus(mover, Protocol.ILLEGAL_MOVE);
+                            metrics.moveRejected();
+                            continue;
+                        }
+                        if (isWon(mover.piece)) {
+                            int status = mover.player == 1 ? Protocol.PLAYER1_WON : Protocol.PLAYER2_WON;
+                            sendStatus(mover, status);
+                            sendStatusMove(other, status, row, column);
+                            broadcast.move(status, row, column);
+                            finish(status);
+                        }
+                        else if (isFull()) {
+                            // it's a tie
+                            sendStatus(mover, Protocol.DRAW);
+                            sendStatusMove(other, Protocol.DRAW, row, column);
+                            broadcast.move(Protocol.DRAW, row, column);
+                            finish(Protocol.DRAW);
+                        }
+                        else {
+                            // it's the other player's turn now
+                            sendStatusMove(other, Protocol.CONTINUE, row, column);
+                            broadcast.move(Protocol.CONTINUE, row, column);
+                        }
+                    }
+                    recordMove(received);
+                    turn = 1 - turn;
+                }
+            }
+            finally {
+                synchronized (this) {
+                    over = true;
+                    for (Seat seat : seats) {
+                        tokens.retire(seat.token);
+                        close(seat.socket);
+                    }
+                }
+                broadcast.finish(result);
+                metrics.gameEnded(result, System.nanoTime() - started);
+                ratings.recordResult(seats[0].id, seats[1].id, result);
+                if (games != null) {
+                    games.append(new GameRecord(seats[0].id, seats[1].id, startTime, board.columns(), result));
+                }
+            }
+        }
+
+        /**
+         * Puts a player who came back with their token back in their seat and
+         * sends them a snapshot of the game. This runs on the lobby thread.
+         *
+         * @param token The token the player sent
+         * @param channel The player's new connection
+         * @return Returns false if the game is already over
+         */
+        public synchronized boolean resume(long token, SocketChannel channel) {
+            if (over) {
+                return false;
+            }
+            Seat seat = seats[0].token == token ? seats[0] : seats[1];
+            // the old connection might not have noticed it's gone yet
+            close(seat.socket);
+            Socket socket = channel.socket();
+            try {
+                connect(seat, socket);
+                seat.out.hello(seat.player).rules(rules).session(seat.token)
+                        .snapshot(board.playerToMove(), board).flush();
+            }
+            catch (IOException ex) {
+                lost(seat, socket);
+            }
+            notifyAll();
+            return true;
+        }
+
+        /**
+         * Waits for a player's move. If their connection drops, waits for them
+         * to resume and then keeps waiting for the move.
+         *
+         * @return Returns the reader holding the move, or null if the player
+         * didn't come back or didn't move in time
+         */
+        private FrameReader readMove(Seat seat) {
+            while (true) {
+                Socket socket;
+                FrameReader in;
+                synchronized (this) {
+                    socket = seat.socket;
+                    in = seat.in;
+                }
+                if (socket != null) {
+                    try {
+                        in.expect(Protocol.MOVE);
+                        return in;
+                    }
+                    catch (SocketTimeoutException ex) {
+                        // the player is idle
+                        return null;
+                    }
+                    catch (IOException ex) {
+                        lost(seat, socket);
+                    }
+                }
+                if (!awaitResume(seat)) {
+                    return null;
+                }
+            }
+        }
+
+        /**
+         * @return Returns true once the player is back, or false if the resume timeout ran out
+         */
+        private synchronized boolean awaitResume(Seat seat) {
+            long deadline = seat.lostAt + ResumeTokens.RESUME_TIMEOUT_NANOS;
+            while (seat.socket == null) {
+                long left = deadline - System.nanoTime();
+                if (left <= 0) {
+                    return false;
+                }
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(this, left);
+                }
+                catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Switches a player's connection to blocking streams that time out
+         * when the player is idle
+         */
+        private void connect(Seat seat, Socket socket) throws IOException {
+            seat.socket = socket;
+            // players come from the lobby in non-blocking mode
+            if (socket.getChannel() != null) {
+                socket.getChannel().configureBlocking(true);
+            }
+            socket.setSoTimeout((int) TimeUnit.NANOSECONDS.toMillis(ResumeTokens.IDLE_TIMEOUT_NANOS));
+            seat.in = new FrameReader(socket.getInputStream());
+            seat.out = new FrameWriter(socket.getOutputStream());
+        }
+
+        /**
+         * Empties a player's seat when their connection fails, unless they
+         * already came back on a new one
+         */
+        private synchronized void lost(Seat seat, Socket socket) {
+            if (seat.socket != socket) {
+                return;
+            }
+            close(socket);
+            seat.socket = null;
+            seat.lostAt = System.nanoTime();
+        }
+
+        /**
+         * Sends a player the game status. A player who isn't connected sees it
+         * in the snapshot when they resume.
+         */
+        private synchronized void sendStatus(Seat seat, int status) {
+            if (seat.socket == null) {
+                return;
+            }
+            try {
+                seat.out.status(status).flush();
+            }
+            catch (IOException ex) {
+                lost(seat, seat.socket);
+            }
+        }
+
+        /**
+         * Sends a player the game status together with the other player's move
+         */
+        private synchronized void sendStatusMove(Seat seat, int status, int row, int column) {
+            if (seat.socket == null) {
+                return;
+            }
+            try {
+                seat.out.statusMove(status, row, column).flush();
+            }
+            catch (IOException ex) {
+                lost(seat, seat.socket);
+            }
+        }
+
+        /**
+         * Remembers how the game ended
+         *
+         * @param status Protocol.PLAYER1_WON, Protocol.PLAYER2_WON or Protocol.DRAW
+         */
+        private void finish(int status) {
+            result = status;
+            over = true;
+        }
+
+        private static void close(Socket socket) {
+            if (socket == null) {
+                return;
+            }
+            try {
+                socket.close();
+            }
+            catch (IOException ex) {
+                // already closed
+            }
+        }
+
+        /**
+         * Counts a move for this session and for the server
+         *
+         * @param received When the move was read, to time how long it took to handle
+         */
+        private void recordMove(long received) {
+            moves++;
+            metrics.moveMade(System.nanoTime() - received);
+        }
+
+        /**
+         * Checks for a tie
+         *
+         * @return Returns true if the game board is full and there is a tie.
+         * Returns false otherwise.
+         */
+        public boolean isFull() {
+            return board.isFull();
+        }
+
+        /**
+         * Checks for a win by checking for enough in a row in the rows, columns,
+         * and each diagonal.
+         *
+         * @param token Takes in the player's game piece - X or O
+         * @return Returns true if there is a win, false otherwise.
+         */
+        public boolean isWon(char token) {
+            return board.isWon(token);
+        }
+    }
+
+    /**
+     * One player's place in a session. The connection is null while the
+     * player is gone and the session is waiting for them to resume.
+     */
+    private static class Seat {
+        private final int player;
+        private final char piece;
+        private final String id;
+        private long token;
+        private Socket socket;
+        private FrameReader in;
+        private FrameWriter out;
+        private long lostAt;
+
+        Seat(int player, char piece, Socket socket) {
+            this.player = player;
+            this.piece = piece;
+            this.id = socket.getInetAddress().getHostAddress();
+            this.socket = socket;
+        }
+    }
+}
@@ -3,6 +3,9 @@ package core;
 import javafx.scene.shape.Circle;
 import java.io.*;
 import java.net.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 import javafx.application.Application;
 import javafx.application.Platform;
 import javafx.scene.Scene;
@@ -12,11 +15,13 @@ import javafx.scene.layout.GridPane;
 import javafx.scene.layout.Pane;
 import javafx.scene.paint.Color;
 import javafx.stage.Stage;
-import javafx.scene.effect.InnerShadow;
 
 /**
  * This class sets up the Connect4 Client that can then connect to a Connect4 Server
- * and play against another player.
+ * and play against another player. If the connection drops during a game, the
+ * client reconnects with its resume token and picks up where it left off.
+ * Started with --watch=N it watches session N instead of playing, or the
+ * newest game with --watch=0.
  *
  * @author Kelly Ellis, Hassan/Bansal
  * @version 1.0
@@ -24,39 +29,40 @@ import javafx.scene.effect.InnerShadow;
 
 public class Connect4Client extends Application {
 
-    private boolean myTurn = false;
+    private static final int PORT = 8004;
+    // How long to keep trying to get back into a game after the connection drops
+    private static final int RECONNECT_SECONDS = 30;
+
+    // set by the network thread, read by the JavaFX thread
+    private volatile boolean myTurn = false;
     private char myToken = ' ';
     private char otherToken = ' ';
     private Label title = new Label();
     private Label status = new Label();
+    // hands the clicked move from the JavaFX thread to the network thread
+    private final BlockingQueue<int[]> selectedMove = new ArrayBlockingQueue<>(1);
     private int rowSelected;
     private int columnSelected;
-    private DataInputStream fromServer;
-    private DataOutputStream toServer;
+    private Socket socket;
+    private FrameReader fromServer;
+    private FrameWriter toServer;
+    // sent back to the server to resume the game after a dropped connection
+    private long sessionToken;
 
     private boolean continueToPlay = true;
-    private boolean waiting = true;
     private String host = "localhost";
 
-    private Cell[][] cell = new Cell[6][7];
+    private BorderPane borderPane = new BorderPane();
+    // made once the server says how big the board is
+    private Cell[][] cell;
 
     @Override
     /**
-     * Creates the game board to be played on.
+     * Creates the window the game board is played in.
      */
     public void start(Stage primaryStage) {
 
-        GridPane pane = new GridPane();
-
-        for (int c = 0; c < 7; c++) {
-            for (int r = 0; r < 6; r++) {
-                pane.add(cell[r][c] = new Cell(r, c), c, r);
-            }
-        }
-
-        BorderPane borderPane = new BorderPane();
         borderPane.setTop(title);
-        borderPane.setCenter(pane);
         borderPane.setBottom(status);
 
         Scene scene = new Scene(borderPane, 700,700);
@@ -64,7 +70,30 @@ public class Connect4Client extends Application {
         primaryStage.setScene(scene);
         primaryStage.show();
 
-        connectToServer();
+        String watch = getParameters().getNamed().get("watch");
+        if (watch != null) {
+            watchGame(Long.parseLong(watch));
+        }
+        else {
+            connectToServer();
+        }
+    }
+
+    /**
+     * Creates the game board to be played on, as big as the server's rules say
+     *
+     * @param rules The rules the server plays by
+     */
+    private void createBoard(Rules rules) {
+        GridPane pane = new GridPane();
+        cell = new Cell[rules.getHeight()][rules.getWidth()];
+
+        for (int c = 0; c < rules.getWidth(); c++) {
+            for (int r = 0; r < rules.getHeight(); r++) {
+                pane.add(cell[r][c] = new Cell(r, c), c, r);
+            }
+        }
+        borderPane.setCenter(pane);
     }
 
     /**
@@ -73,9 +102,11 @@ public class Connect4Client extends Application {
      */
     public void connectToServer() {
         try {
-            Socket socket = new Socket(host, 8004);
-            fromServer = new DataInputStream(socket.getInputStream());
-            toServer = new DataOutputStream(socket.getOutputStream());
+            socket = new Socket(host, PORT);
+            fromServer = new FrameReader(socket.getInputStream());
+            toServer = new FrameWriter(socket.getOutputStream());
+            // ask to be paired for a new game
+            toServer.join().flush();
         }
         catch (Exception ex) {
             ex.printStackTrace();
@@ -85,7 +116,16 @@ public class Connect4Client extends Application {
         new Thread(() -> {
             try {
                 // get notification from server
-                int player = fromServer.readInt();
+                fromServer.expect(Protocol.HELLO);
+                if (fromServer.arg() != Protocol.VERSION) {
+                    throw new ProtocolException("Server speaks protocol version " + fromServer.arg());
+                }
+                int player = fromServer.player();
+                fromServer.expect(Protocol.RULES);
+                Rules rules = fromServer.rules();
+                Platform.runLater(() -> createBoard(rules));
+                fromServer.expect(Protocol.SESSION);
+                sessionToken = fromServer.token();
 
                 // am i player 1 or 2?
                 if (player == 1) {
@@ -97,12 +137,13 @@ public class Connect4Client extends Application {
                     });
 
                     // receive startup notification from server
-                    fromServer.readInt(); // ignored
+                    fromServer.expect(Protocol.START);
 
                     // other player joined
                     Platform.runLater(() ->
                             status.setText("Player 2 has joined. You play first. " +
-                                    "Click on a circle to place your game piece there."));
+                                    "Click on a column to drop your game piece in it. " +
+                                    rules.getConnect() + " in a row wins."));
 
                     // it is my turn
                     myTurn = true;
@@ -112,62 +153,206 @@ public class Connect4Client extends Application {
                     otherToken = 'X';
                     Platform.runLater(() -> {
                         title.setText("Player 2 - Your color is yellow");
-                        status.setText("Waiting for Player 1 to move...");
+                        status.setText("Waiting for Player 1 to move... " + rules.getConnect() + " in a row wins.");
                     });
                 }
 
-                // continue to play
+                // continue to play, player 1 moves first
+                boolean myMove = player == 1;
                 while (continueToPlay) {
-                    if (player == 1) {
-                        waitForPlayerAction();
-                        sendMove();
+                    try {
+                        if (myMove) {
+                            waitForPlayerAction();
+                            sendMove();
+                        }
                         receiveInfoFromServer();
-                    } else if (player == 2) {
-                        receiveInfoFromServer();
-                        waitForPlayerAction();
-                        sendMove();
+                        myMove = true;
+                    }
+                    catch (IOException ex) {
+                        // connection dropped, get back into the game
+                        myMove = resumeGame();
                     }
                 }
             }
             catch (Exception ex) {
+                Platform.runLater(() -> status.setText("Lost the connection to the server."));
                 ex.printStackTrace();
             }
         }).start();
     }
 
     /**
-     * Waits for the player's move
+     * Reconnects to the server with the resume token and rebuilds the board
+     * from the snapshot the server sends back in the same round trip.
      *
+     * @return Returns true if it's this player's turn
+     * @throws IOException If the game couldn't be resumed in time, such as when it has already ended
      * @throws InterruptedException When the thread is interrupted
      */
-    private void waitForPlayerAction() throws InterruptedException {
-        while (waiting) {
-            Thread.sleep(100);
+    private boolean resumeGame() throws IOException, InterruptedException {
+        myTurn = false;
+        Platform.runLater(() -> status.setText("Connection lost, reconnecting..."));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(RECONNECT_SECONDS);
+        while (true) {
+            socket.close();
+            try {
+                socket = new Socket(host, PORT);
+                fromServer = new FrameReader(socket.getInputStream());
+                toServer = new FrameWriter(socket.getOutputStream());
+                toServer.resume(sessionToken).flush();
+                fromServer.expect(Protocol.HELLO);
+                fromServer.expect(Protocol.RULES);
+                fromServer.expect(Protocol.SESSION);
+                fromServer.expect(Protocol.SNAPSHOT);
+                break;
+            }
+            catch (IOException ex) {
+                if (System.nanoTime() > deadline) {
+                    throw ex;
+                }
+                Thread.sleep(1000);
+            }
+        }
+
+        boolean mine = fromServer.arg() == (myToken == 'X' ? 1 : 2);
+        // a move clicked while the connection was down never reached the server
+        selectedMove.clear();
+        showSnapshot();
+        Platform.runLater(() ->
+                status.setText(mine ? "Back in the game. Your turn - click on a column to drop your game piece in it."
+                        : "Back in the game. Waiting for the other player to move."));
+        myTurn = mine;
+        return mine;
+    }
+
+    /**
+     * Redraws the board from the snapshot the server just sent
+     *
+     * @return Returns how many moves the snapshot holds
+     */
+    private int showSnapshot() {
+        // copy the moves out, the reader reuses its frame
+        int moves = fromServer.snapshotMoves();
+        int[] rows = new int[moves];
+        int[] columns = new int[moves];
+        for (int i = 0; i < moves; i++) {
+            rows[i] = fromServer.snapshotRow(i);
+            columns[i] = fromServer.snapshotColumn(i);
         }
-        waiting = true;
+        Platform.runLater(() -> {
+            for (Cell[] row : cell) {
+                for (Cell c : row) {
+                    c.clear();
+                }
+            }
+            for (int i = 0; i < moves; i++) {
+                cell[rows[i]][columns[i]].setToken(i % 2 == 0 ? 'X' : 'O');
+            }
+        });
+        return moves;
     }
 
     /**
-     * Sends the player's selected row and column to the server
+     * Watches a game without playing in it. The server sends a snapshot of
+     * the game so far, then every move as it's played.
+     *
+     * @param sessionNo The session to watch, or 0 for the newest game
+     */
+    public void watchGame(long sessionNo) {
+        title.setText("Watching");
+        new Thread(() -> {
+            boolean over = false;
+            try {
+                socket = new Socket(host, PORT);
+                fromServer = new FrameReader(socket.getInputStream());
+                toServer = new FrameWriter(socket.getOutputStream());
+                toServer.watch(sessionNo).flush();
+
+                fromServer.expect(Protocol.HELLO);
+                if (fromServer.arg() != Protocol.VERSION) {
+                    throw new ProtocolException("Server speaks protocol version " + fromServer.arg());
+                }
+                fromServer.expect(Protocol.RULES);
+                Rules rules = fromServer.rules();
+                Platform.runLater(() -> createBoard(rules));
+                fromServer.expect(Protocol.SNAPSHOT);
+                int moves = showSnapshot();
+                Platform.runLater(() -> status.setText("Watching - " + rules.getConnect() + " in a row wins."));
+
+                while (!over) {
+                    int event = fromServer.next();
+                    if (event == Protocol.STATUS_MOVE) {
+                        int row = fromServer.row();
+                        int column = fromServer.column();
+                        char piece = moves++ % 2 == 0 ? 'X' : 'O';
+                        Platform.runLater(() -> cell[row][column].setToken(piece));
+                    }
+                    else if (event != Protocol.STATUS) {
+                        throw new ProtocolException("Unexpected event " + event);
+                    }
+                    int gameStatus = fromServer.arg();
+                    over = gameStatus != Protocol.CONTINUE;
+                    if (gameStatus == Protocol.PLAYER1_WON) {
+                        Platform.runLater(() -> status.setText("Player 1 won!"));
+                    }
+                    else if (gameStatus == Protocol.PLAYER2_WON) {
+                        Platform.runLater(() -> status.setText("Player 2 won!"));
+                    }
+                    else if (gameStatus == Protocol.DRAW) {
+                        Platform.runLater(() -> status.setText("It's a tie!"));
+                    }
+                    else if (gameStatus == Protocol.ABANDONED) {
+                        Platform.runLater(() -> status.setText("A player left, the game is over."));
+                    }
+                }
+            }
+            catch (IOException ex) {
+                // the server closes spectators it can't find a game for or can't keep up with
+                Platform.runLater(() -> status.setText("No game to watch, or the server stopped sending it."));
+            }
+        }).start();
+    }
+
+    /**
+     * Waits for the player's move. The thread blocks until the move is
+     * clicked, so it doesn't use any CPU while waiting.
+     *
+     * @throws InterruptedException When the thread is interrupted
+     */
+    private void waitForPlayerAction() throws InterruptedException {
+        int[] move = selectedMove.take();
+        rowSelected = move[0];
+        columnSelected = move[1];
+    }
+
+    /**
+     * Sends the player's selected column to the server in one frame
      *
      * @throws IOException
      */
     private void sendMove() throws IOException {
-        toServer.writeInt(rowSelected);
-        toServer.writeInt(columnSelected);
+        toServer.move(columnSelected).flush();
     }
 
     /**
      * Receives information from the server about the game status when
      * there's a winner, a tie, or to let each player know when to move.
+     * The other player's move comes in the same event as the status.
      *
      * @throws IOException
      */
     private void receiveInfoFromServer() throws IOException {
         // receive game status
-        int gameStatus = fromServer.readInt();
+        int event = fromServer.next();
+        if (event != Protocol.STATUS && event != Protocol.STATUS_MOVE) {
+            throw new ProtocolException("Unexpected event " + event);
+        }
+        if (event == Protocol.STATUS_MOVE) {
+            receiveMove();
+        }
+        int gameStatus = fromServer.arg();
 
-        if (gameStatus == 1) {
+        if (gameStatus == Protocol.PLAYER1_WON) {
             // player 1 won, stop playing
             continueToPlay = false;
             if (myToken == 'X') {
@@ -175,10 +360,9 @@ public class Connect4Client extends Application {
             }
             else if (myToken == 'O') {
                 Platform.runLater(() -> status.setText("Player 1 won!"));
-                receiveMove();
             }
         }
-        else if (gameStatus == 2) {
+        else if (gameStatus == Protocol.PLAYER2_WON) {
             // player 2 won, stop playing
             continueToPlay = false;
             if (myToken == 'O') {
@@ -186,35 +370,37 @@ public class Connect4Client extends Application {
             }
             else if (myToken == 'X') {
                 Platform.runLater(() -> status.setText("Player 2 won!"));
-                receiveMove();
             }
         }
-        else if (gameStatus == 3) {
+        else if (gameStatus == Protocol.DRAW) {
             // game is tied
             continueToPlay = false;
             Platform.runLater(() -> status.setText("It's a tie!"));
-            if (myToken == 'O') {
-                receiveMove();
-            }
-
+        }
+        else if (gameStatus == Protocol.ILLEGAL_MOVE) {
+            // the server didn't take the move, take the piece back off the board
+            int row = rowSelected;
+            int column = columnSelected;
+            Platform.runLater(() -> {
+                cell[row][column].clear();
+                status.setText("That column can't be played - choose another one.");
+            });
+            myTurn = true;
         }
         else {
-            receiveMove();
-            Platform.runLater(() -> status.setText("Your turn - click on a circle to place your game piece there."));
+            Platform.runLater(() -> status.setText("Your turn - click on a column to drop your game piece in it."));
             myTurn = true;
         }
     }
 
     /**
-     * Receives a move from the other player from the server, and
-     * updates the game board with that player's move.
-     *
-     * @throws IOException
+     * Updates the game board with the other player's move that came
+     * with the last status from the server.
      */
-    private void receiveMove() throws IOException {
+    private void receiveMove() {
         // get other player's move
-        int row = fromServer.readInt();
-        int column = fromServer.readInt();
+        int row = fromServer.row();
+        int column = fromServer.column();
         Platform.runLater(() -> {
             cell[row][column].setToken(otherToken);
         });
@@ -223,11 +409,14 @@ public class Connect4Client extends Application {
 
     /**
      * Inner cell class that helps with the game board set up and
-     * allows for a game piece to be placed
+     * allows for a game piece to be placed. Each cell builds its hole and
+     * its disc once, and placing or clearing a piece only changes the disc's
+     * fill and whether it's shown, so the scene never grows during a game.
      */
     public class Cell extends Pane {
         private int row;
         private int column;
+        private final Circle disc;
 
         private char token = ' ';
 
@@ -244,11 +433,8 @@ public class Connect4Client extends Application {
             this.setPrefSize(600, 600);
 
             setStyle("-fx-background-color: blue; -fx-border-color: darkblue");
-
-            InnerShadow effect = new InnerShadow();
-            effect.setOffsetX(4.0f);
-            effect.setOffsetY(4.0f);
-            this.setEffect(effect);
+            setEffect(BoardStyle.CELL_SHADOW);
+            BoardStyle.cache(this);
 
             Circle circle = new Circle(45);
             circle.setCenterY(50);
@@ -257,7 +443,16 @@ public class Connect4Client extends Application {
             circle.setTranslateX(3);
             circle.setFill(Color.WHITE);
             circle.setStroke(Color.BLACK);
-            this.getChildren().addAll(circle);
+
+            disc = new Circle(40);
+            disc.setCenterY(50);
+            disc.setCenterX(50);
+            disc.setTranslateY(5);
+            disc.setTranslateX(3);
+            disc.setEffect(BoardStyle.DISC_SHADOW);
+            disc.setVisible(false);
+
+            this.getChildren().addAll(circle, disc);
             this.setOnMouseClicked(e -> handleMouseClick());
         }
 
@@ -272,43 +467,24 @@ public class Connect4Client extends Application {
         }
 
         /**
-         * Helper method that creates the colored game pieces when a player moves.
+         * Takes the game piece off this cell
+         */
+        public void clear() {
+            token = ' ';
+            repaint();
+        }
+
+        /**
+         * Helper method that shows this cell's disc in the player's color, or hides it
+         * when the cell is empty.
          */
         protected void repaint() {
-            // red
-            if (token == 'X') {
-                Circle circle = new Circle(40);
-                circle.setCenterY(50);
-                circle.setCenterX(50);
-                circle.setFill(Color.RED);
-
-                circle.setTranslateY(5);
-                circle.setTranslateX(3);
-
-                InnerShadow shadow = new InnerShadow();
-                shadow.setOffsetX(5.0f);
-                shadow.setOffsetY(5.0f);
-                circle.setEffect(shadow);
-
-                this.getChildren().addAll(circle);
-            }
-            // yellow
-            else if (token == 'O') {
-                Circle circle = new Circle(40);
-                circle.setCenterX(50);
-                circle.setCenterY(50);
-                circle.setFill(Color.YELLOW);
-
-                circle.setTranslateY(5);
-                circle.setTranslateX(3);
-
-                InnerShadow shadow = new InnerShadow();
-                shadow.setOffsetX(5.0f);
-                shadow.setOffsetY(5.0f);
-                circle.setEffect(shadow);
-
-                getChildren().add(circle);
+            if (token == ' ') {
+                disc.setVisible(false);
+                return;
             }
+            disc.setFill(BoardStyle.discPaint(token));
+            disc.setVisible(true);
         }
 
         /**
@@ -316,13 +492,18 @@ public class Connect4Client extends Application {
          * that player's piece by using the helper method setToken()
          */
         private void handleMouseClick() {
-            if (token == ' ' && myTurn) {
-                setToken(myToken);
-                myTurn = false;
-                rowSelected = row;
-                columnSelected = column;
-                status.setText("Waiting for the other player to move");
-                waiting = false;
+            if (!myTurn) {
+                return;
+            }
+            // the piece drops to the lowest empty spot in the column
+            for (int r = cell.length - 1; r >= 0; r--) {
+                if (cell[r][column].token == ' ') {
+                    cell[r][column].setToken(myToken);
+                    myTurn = false;
+                    status.setText("Waiting for the other player to move");
+                    selectedMove.offer(new int[] {r, column});
+                    return;
+                }
             }
         }
     }
@@ -7,47 +7,155 @@ package core;
  * @version 1.0
  */
 
-import java.util.Random;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
 
-public class Connect4ComputerPlayer extends Connect4 {
+public class Connect4ComputerPlayer {
+
+    /** The p99 time a computer move should take, from being asked to having a column */
+    public static final long MOVE_LATENCY_TARGET_MS = 50;
+
+    /**
+     * How long the computer thinks about a move unless told otherwise. It's
+     * 20 ms under the latency target, so stopping a depth part way, the
+     * opening book and handling the move still fit in the target.
+     */
+    public static final long DEFAULT_TIME_BUDGET_MS = MOVE_LATENCY_TARGET_MS - 20;
+
+    /** Score of a move that wasn't searched, such as one from the opening book */
+    public static final int UNKNOWN_SCORE = Integer.MIN_VALUE;
+
+    // 2^16 transposition table entries, 1 MB per computer player
+    private static final int TABLE_BITS = 16;
+
+    // Most cores one move may use unless told otherwise, set with -Dconnect4.aiThreads
+    private static final int DEFAULT_THREADS = Integer.getInteger("connect4.aiThreads", 1);
+
+    // Opening book shared by every computer player, set with -Dconnect4.openingBook
+    private static final OpeningBook BOOK = loadBook(System.getProperty("connect4.openingBook", "connect4.book"));
+
+    private final Connect4 game;
+    private Connect4ParallelSearch search = new Connect4ParallelSearch(TABLE_BITS, DEFAULT_THREADS);
+    private long timeBudgetNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_TIME_BUDGET_MS);
+    private int maxDepth = BitBoard.WIDTH * BitBoard.HEIGHT;
+    private int lastScore = UNKNOWN_SCORE;
+
+    /**
+     * Creates a computer player for a game
+     *
+     * @param game The game the computer plays in
+     * @throws IllegalArgumentException If the game isn't the standard 7x6 game
+     */
+    public Connect4ComputerPlayer(Connect4 game) {
+        if (!game.getRules().isStandard()) {
+            throw new IllegalArgumentException("The computer only plays the standard " + Rules.STANDARD + " game");
+        }
+        this.game = game;
+    }
+
+    /**
+     * Sets how long the computer may think about each move
+     *
+     * @param millis The time budget in milliseconds
+     */
+    public void setTimeBudget(long millis) {
+        timeBudgetNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+    }
 
     /**
-     * Method to randomly choose a column. Uses Java's Random() method.
+     * Sets the most cores the computer may use to think about one move. It's
+     * never more than the number of cores the machine has.
      *
-     * @return Returns the column randomly chosen as an integer
+     * @param threads The number of threads, 1 searches on the caller's thread only
      */
-    public static int chooseColumn() {
-        Random rand = new Random();
-        int column;
-        column = rand.nextInt(7);
+    public void setMaxThreads(int threads) {
+        search = new Connect4ParallelSearch(TABLE_BITS, threads);
+        search.setMaxDepth(maxDepth);
+    }
+
+    /**
+     * Sets how many moves ahead the computer may look. A shallow depth plays
+     * weaker but much faster.
+     *
+     * @param depth The most moves ahead to search, at least 1
+     */
+    public void setMaxDepth(int depth) {
+        maxDepth = depth;
+        search.setMaxDepth(depth);
+    }
+
+    /**
+     * Method to choose a column by searching the game for the best move
+     * within the time budget. Early in the game the move comes straight from
+     * the opening book instead. X always moves first, so the player to move
+     * is worked out from how many pieces are on the board.
+     *
+     * @return Returns the chosen column from 0 to 6, or -1 if the board is full
+     */
+    public int chooseColumn() {
+        GameState state = game.getState();
+        char player = state.moveCount() % 2 == 0 ? 'X' : 'O';
+        if (BOOK != null) {
+            int column = BOOK.lookup(state, player);
+            if (column >= 0 && state.canPlay(column)) {
+                lastScore = UNKNOWN_SCORE;
+                return column;
+            }
+        }
+        int column = search.bestMove(state, player, timeBudgetNanos);
+        lastScore = search.getLastScore();
         return column;
     }
 
+    /**
+     * @return Returns the search's score for the last chosen move from the computer's side,
+     * or UNKNOWN_SCORE if it came from the opening book
+     */
+    public int getLastScore() {
+        return lastScore;
+    }
+
+    /**
+     * @return Returns the search engine, to read the last search's statistics
+     */
+    public Connect4ParallelSearch getSearch() {
+        return search;
+    }
+
     /**
      * Method to drop the computer player's piece into the board.
      * Uses the same logic as the human player's dropPiece method in
      * Connect4.java.
      *
      * @param player The player's token. X for the human, O for the computer
-     * @param column The randomly chosen column number from chooseColumn()
+     * @param column The column number from 1 to 7
      * @return Returns true if the piece was successfully dropped into the column.
      * Returns false otherwise.
      */
-    public static boolean dropComputerPiece(char player, int column) {
-        boolean drop = false;
-        if (column < 0 || column > 7) {
-            throw new ArrayIndexOutOfBoundsException("Column is invalid.");
+    public boolean dropComputerPiece(char player, int column) {
+        return game.dropPiece(player, column);
+    }
+
+    /**
+     * Loads the opening book if there is one
+     *
+     * @param file Path to the book file
+     * @return Returns the book, or null if there isn't one
+     */
+    private static OpeningBook loadBook(String file) {
+        Path path = Paths.get(file);
+        if (!Files.exists(path)) {
+            return null;
         }
-        // Iterates over the given column's rows to find the top-most
-        // available empty spot, and then drops that player's game
-        // piece in that spot
-        for (int i = board.length - 1; i >= 0; i--) {
-            if (board[i][column-1] == ' ') {
-                board[i][column-1] = player;
-                drop = true;
-                break;
-            }
+        try {
+            return OpeningBook.load(path);
+        }
+        catch (IOException ex) {
+            ex.printStackTrace();
+            return null;
         }
-        return drop;
     }
 }
@@ -0,0 +1,233 @@
+package core;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * This class runs the Connect4 Server without a window. It doesn't use
+ * JavaFX at all, so it starts quickly and can run anywhere Java does, such as
+ * in a container. Messages go to an AsyncLog on standard output instead of a
+ * TextArea.
+ *
+ * The server is set up with system properties, the same ones Connect4Server
+ * uses: -Dconnect4.port (default 8004), -Dconnect4.mode=nio,
+ * -Dconnect4.nioLoops, -Dconnect4.maxSessions, -Dconnect4.gameLog,
+ * -Dconnect4.metricsPort, -Dconnect4.rules, such as 9x7x5 for a 9 by 7
+ * board with 5 in a row, and -Dconnect4.positionIndex, a file to index the
+ * positions of logged games in.
+ *
+ * When the JVM shuts down, such as on SIGTERM, the server stops taking
+ * players first, then the game log writes the games still queued and closes
+ * the position index, so nothing that was already finished is lost.
+ *
+ * @author Kelly Ellis
+ * @version 1.0
+ */
+public final class Connect4HeadlessServer {
+
+    // Port players connect to, can be changed with -Dconnect4.port
+    public static final int PORT = Integer.getInteger("connect4.port", 8004);
+
+    // Most games that can be played at once, can be changed with -Dconnect4.maxSessions
+    private static final int MAX_SESSIONS = Integer.getInteger("connect4.maxSessions", 10000);
+
+    // Set -Dconnect4.mode=nio to serve every player from a few selector threads
+    private static final boolean NIO_MODE = "nio".equals(System.getProperty("connect4.mode"));
+    private static final int NIO_LOOPS = Integer.getInteger("connect4.nioLoops",
+            Runtime.getRuntime().availableProcessors());
+
+    private Connect4HeadlessServer() {
+    }
+
+    /**
+     * Opens the game log, starts the metrics and runs the server in the mode
+     * the system properties ask for. This doesn't return while the server runs.
+     *
+     * @param metrics The counters to report moves and games to
+     * @param ratings The player ratings used for pairing
+     * @param log Where to send the server's messages
+     * @throws IOException If the server socket can't be opened
+     */
+    public static void serve(ServerMetrics metrics, PlayerRatings ratings, Consumer<String> log) throws IOException {
+        serve(metrics, ratings, log, () -> { });
+    }
+
+    /**
+     * Runs the server like serve(metrics, ratings, log), and closes it and the
+     * game log when the JVM shuts down
+     *
+     * @param metrics The counters to report moves and games to
+     * @param ratings The player ratings used for pairing
+     * @param log Where to send the server's messages
+     * @param afterClose Run at shutdown once the server and game log are closed
+     * @throws IOException If the server socket can't be opened
+     */
+    public static void serve(ServerMetrics metrics, PlayerRatings ratings, Consumer<String> log,
+            Runnable afterClose) throws IOException {
+        Rules rules = Rules.configured();
+        GameLog games = openGameLog(rules, log);
+        startMetrics(metrics, log);
+        if (NIO_MODE) {
+            Connect4NioServer server = new Connect4NioServer(PORT, rules, NIO_LOOPS, metrics, ratings, games, log);
+            closeOnShutdown(server::close, games, log, afterClose);
+            server.start();
+        }
+        else {
+            Connect4BlockingServer server = new Connect4BlockingServer(PORT, rules, MAX_SESSIONS, metrics, ratings,
+                    games, log);
+            closeOnShutdown(server::close, games, log, afterClose);
+            server.start();
+        }
+    }
+
+    /**
+     * Closes the server, then the game log, which writes the games still
+     * queued and closes its position index, in one shutdown hook so they
+     * always happen in that order
+     */
+    private static void closeOnShutdown(Closeable server, GameLog games, Consumer<String> log, Runnable afterClose) {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                server.close();
+            }
+            catch (IOException ex) {
+                // exiting anyway
+            }
+            if (games != null) {
+                try {
+                    games.close();
+                    log.accept("Closed the game log");
+                }
+                catch (IOException ex) {
+                    log.accept("Can't close game log: " + ex.getMessage());
+                }
+            }
+            afterClose.run();
+        }, "connect4-shutdown"));
+    }
+
+    /**
+     * Opens the file finished games are kept in, which is connect4.games unless
+     * -Dconnect4.gameLog says otherwise. Setting it to nothing turns the log off.
+     *
+     * @param rules The rules the games are played by
+     * @param log Where to send messages about the log
+     * @return Returns the open log, or null if there isn't one
+     */
+    static GameLog openGameLog(Rules rules, Consumer<String> log) {
+        String file = System.getProperty("connect4.gameLog", "connect4.games");
+        if (file.isEmpty()) {
+            return null;
+        }
+        PositionIndex index = openPositionIndex(file, rules, log);
+        try {
+            GameLog games = GameLog.open(Paths.get(file), index);
+            log.accept("Keeping finished games in " + file);
+            return games;
+        }
+        catch (IOException ex) {
+            log.accept("Can't open game log " + file + ": " + ex.getMessage());
+            closeQuietly(index);
+            return null;
+        }
+    }
+
+    /**
+     * Opens the position index named by -Dconnect4.positionIndex, if there is
+     * one, and catches it up with the games already in the log. The log
+     * doesn't record the rules its games were played by, so the index is only
+     * opened for the standard game.
+     *
+     * @return Returns the index, or null if there isn't one
+     */
+    private static PositionIndex openPositionIndex(String gameLog, Rules rules, Consumer<String> log) {
+        String file = System.getProperty("connect4.positionIndex", "");
+        if (file.isEmpty()) {
+            return null;
+        }
+        if (!rules.isStandard()) {
+            log.accept("Not indexing positions in " + file + ", it only holds standard 7x6 games and these are "
+                    + rules);
+            return null;
+        }
+        PositionIndex index = null;
+        try {
+            index = PositionIndex.open(Paths.get(file));
+            if (index.wasReset()) {
+                log.accept("Position index " + file + " wasn't closed cleanly, rebuilding it from the log");
+            }
+            if (Files.exists(Paths.get(gameLog))) {
+                long added = index.update(Paths.get(gameLog));
+                log.accept("Indexing positions in " + file + ", caught up with " + added + " games");
+            }
+            return index;
+        }
+        catch (IOException ex) {
+            log.accept("Can't open position index " + file + ": " + ex.getMessage());
+            closeQuietly(index);
+            return null;
+        }
+    }
+
+    private static void closeQuietly(PositionIndex index) {
+        if (index == null) {
+            return;
+        }
+        try {
+            index.close();
+        }
+        catch (IOException ex) {
+            // nothing more to do
+        }
+    }
+
+    /**
+     * Makes the metrics readable through JMX and the local HTTP endpoint
+     */
+    private static void startMetrics(ServerMetrics metrics, Consumer<String> log) {
+        metrics.register();
+        try {
+            MetricsEndpoint endpoint = MetricsEndpoint.startConfigured(metrics);
+            if (endpoint != null) {
+                log.accept("Metrics at http://localhost:" + endpoint.getPort() + "/metrics");
+            }
+        }
+        catch (IOException ex) {
+            log.accept("Can't serve metrics: " + ex.getMessage());
+        }
+    }
+
+    public static void main(String[] args) {
+        AsyncLog log = new AsyncLog(System.out);
+        ServerMetrics metrics = new ServerMetrics();
+
+        // log the game counts every 10 seconds
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "connect4-metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reporter.scheduleAtFixedRate(() -> log.info("Server load",
+                "active_sessions", metrics.getActiveGames(),
+                "moves_per_sec", Math.round(metrics.sampleMovesPerSecond()),
+                "move_p99_us", metrics.getMoveLatencyP99Micros(),
+                "games_started", metrics.getGamesStarted(),
+                "games_rejected", metrics.getGamesRejected()), 10, 10, TimeUnit.SECONDS);
+
+        try {
+            // the log is closed last, after the server and game log
+            serve(metrics, new PlayerRatings(), log, log::close);
+        }
+        catch (IOException ex) {
+            log.warn("Server stopped", "error", ex.getMessage());
+            log.close();
+            System.exit(1);
+        }
+    }
+}
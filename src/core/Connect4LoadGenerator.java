@@ -0,0 +1,252 @@
+package core;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.net.Socket;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This is a headless load generator for the Connect4 Server. It opens many
+ * connections that each play game after game using the same Protocol as
+ * Connect4Client, picking random or computer player moves, and reports how
+ * the server holds up.
+ *
+ * Connect latency is the time from opening the socket to getting the hello
+ * event, which includes waiting in the lobby to be paired. Move round trip is
+ * the time from sending a move to hearing back from the server, which is
+ * either the final status or the other player's next move, so in "ai" mode
+ * it includes the other bot's thinking time. Random moves work with any
+ * Rules the server plays, but the computer player only plays the standard game.
+ *
+ * Spectators each watch the newest game until it ends, then the next one, so
+ * the players' round trips can be compared with and without an audience.
+ *
+ * Usage: Connect4LoadGenerator [host] [port] [players] [seconds] [random|ai] [spectators]
+ *
+ * @author Kelly Ellis
+ * @version 1.0
+ */
+public class Connect4LoadGenerator {
+
+    // How long the computer player thinks in "ai" mode
+    private static final long AI_BUDGET_MS = 5;
+
+    private final String host;
+    private final int port;
+    private final boolean useAi;
+
+    private final LatencyHistogram connectLatency = new LatencyHistogram();
+    private final LatencyHistogram moveRoundTrip = new LatencyHistogram();
+    private final LongAdder gamesFinished = new LongAdder();
+    private final LongAdder gamesFailed = new LongAdder();
+    private final LongAdder movesSent = new LongAdder();
+    private final LongAdder gamesWatched = new LongAdder();
+    private final LongAdder eventsWatched = new LongAdder();
+
+    private volatile long deadline;
+
+    /**
+     * Creates a load generator
+     *
+     * @param host The server's host name
+     * @param port The server's port
+     * @param useAi Whether players pick moves with the computer player instead of at random
+     */
+    public Connect4LoadGenerator(String host, int port, boolean useAi) {
+        this.host = host;
+        this.port = port;
+        this.useAi = useAi;
+    }
+
+    /**
+     * Runs the simulated players until the time is up, printing progress
+     * every 5 seconds and a summary at the end.
+     *
+     * @param players How many connections to keep playing at once
+     * @param spectators How many connections to keep watching games at once
+     * @param seconds How long to run for
+     * @throws InterruptedException If the thread is interrupted while waiting
+     */
+    public void run(int players, int spectators, int seconds) throws InterruptedException {
+        long start = System.nanoTime();
+        deadline = start + TimeUnit.SECONDS.toNanos(seconds);
+
+        Thread[] threads = new Thread[players];
+        for (int i = 0; i < players; i++) {
+            long seed = i;
+            threads[i] = new Thread(() -> play(new Random(seed)), "connect4-load-" + i);
+            threads[i].setDaemon(true);
+            threads[i].start();
+        }
+        for (int i = 0; i < spectators; i++) {
+            Thread thread = new Thread(this::watch, "connect4-watch-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        while (System.nanoTime() < deadline) {
+            Thread.sleep(Math.min(5000, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()) + 1));
+            report(start);
+        }
+        // let the games in progress finish for a little while
+        for (Thread thread : threads) {
+            thread.join(1000);
+        }
+        System.out.println("Final:");
+        report(start);
+    }
+
+    /**
+     * One simulated player, playing games until the time is up
+     */
+    private void play(Random rand) {
+        Connect4 game = new Connect4();
+        Connect4ComputerPlayer computer = null;
+
+        while (System.nanoTime() < deadline) {
+            long connectStart = System.nanoTime();
+            try (Socket socket = new Socket()) {
+                socket.setTcpNoDelay(true);
+                socket.connect(new InetSocketAddress(host, port));
+                FrameReader in = new FrameReader(socket.getInputStream());
+                FrameWriter out = new FrameWriter(socket.getOutputStream());
+                out.join().flush();
+
+                in.expect(Protocol.HELLO);
+                connectLatency.record(System.nanoTime() - connectStart);
+                char me = in.player() == 1 ? 'X' : 'O';
+                char other = me == 'X' ? 'O' : 'X';
+                in.expect(Protocol.RULES);
+                Rules rules = in.rules();
+                in.expect(Protocol.SESSION);
+                if (!rules.equals(game.getRules())) {
+                    game = new Connect4(rules);
+                    computer = null;
+                }
+                if (useAi && computer == null) {
+                    // only the standard game has a computer player, so this fails on other variants
+                    computer = new Connect4ComputerPlayer(game);
+                    computer.setTimeBudget(AI_BUDGET_MS);
+                }
+                game.reset();
+
+                if (me == 'X') {
+                    in.expect(Protocol.START);
+                }
+                else if (!receive(in, game, other)) {
+                    gamesFinished.increment();
+                    continue;
+                }
+
+                while (true) {
+                    int column = useAi ? computer.chooseColumn() : randomColumn(game, rand);
+                    game.dropPiece(me, column + 1);
+
+                    long sent = System.nanoTime();
+                    out.move(column).flush();
+                    movesSent.increment();
+                    boolean playing = receive(in, game, other);
+                    moveRoundTrip.record(System.nanoTime() - sent);
+                    if (!playing) {
+                        gamesFinished.increment();
+                        break;
+                    }
+                }
+            }
+            catch (IOException | IllegalArgumentException ex) {
+                gamesFailed.increment();
+            }
+        }
+    }
+
+    /**
+     * One simulated spectator, watching the newest game until the time is up
+     */
+    private void watch() {
+        while (System.nanoTime() < deadline) {
+            boolean watching = false;
+            try (Socket socket = new Socket()) {
+                socket.connect(new InetSocketAddress(host, port));
+                FrameReader in = new FrameReader(socket.getInputStream());
+                new FrameWriter(socket.getOutputStream()).watch(0).flush();
+                in.expect(Protocol.HELLO);
+                watching = true;
+                in.expect(Protocol.RULES);
+                in.expect(Protocol.SNAPSHOT);
+                // the server closes the connection once the game is over
+                while (true) {
+                    in.next();
+                    eventsWatched.increment();
+                }
+            }
+            catch (IOException ex) {
+                if (watching) {
+                    gamesWatched.increment();
+                }
+            }
+            if (!watching) {
+                // no game to watch yet
+                try {
+                    Thread.sleep(100);
+                }
+                catch (InterruptedException ex) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the server's next status and applies the other player's move
+     *
+     * @return Returns true if the game goes on and it's this player's turn
+     */
+    private static boolean receive(FrameReader in, Connect4 game, char other) throws IOException {
+        int event = in.next();
+        if (event == Protocol.STATUS_MOVE) {
+            game.dropPiece(other, in.column() + 1);
+        }
+        else if (event != Protocol.STATUS) {
+            throw new ProtocolException("Unexpected event " + event);
+        }
+        return in.arg() == Protocol.CONTINUE && !game.boardIsFull();
+    }
+
+    private static int randomColumn(Connect4 game, Random rand) {
+        Rules rules = game.getRules();
+        int column;
+        do {
+            column = rand.nextInt(rules.getWidth());
+        }
+        while (game.columnHeight(column) == rules.getHeight());
+        return column;
+    }
+
+    private void report(long start) {
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%.0fs: games=%d (%.1f/s) failed=%d moves=%d (%.1f/s)%n", seconds,
+                gamesFinished.sum(), gamesFinished.sum() / seconds, gamesFailed.sum(),
+                movesSent.sum(), movesSent.sum() / seconds);
+        System.out.println("  connect:    " + connectLatency.summary());
+        System.out.println("  round trip: " + moveRoundTrip.summary());
+        if (gamesWatched.sum() > 0 || eventsWatched.sum() > 0) {
+            System.out.printf("  watched:    games=%d events=%d%n", gamesWatched.sum(), eventsWatched.sum());
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        String host = args.length > 0 ? args[0] : "localhost";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 8004;
+        int players = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 30;
+        boolean useAi = args.length > 4 && args[4].equals("ai");
+        int spectators = args.length > 5 ? Integer.parseInt(args[5]) : 0;
+
+        System.out.println("Playing with " + players + " players and " + spectators + " spectators against " +
+                host + ":" + port + " for " + seconds + " s, " + (useAi ? "computer" : "random") + " moves");
+        new Connect4LoadGenerator(host, port, useAi).run(players, spectators, seconds);
+    }
+}
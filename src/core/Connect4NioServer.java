@@ -0,0 +1,550 @@
+package core;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * This class is a non-blocking version of the Connect4 Server. Instead of a
+ * thread per session, every player connection is handled by a few event loop
+ * threads that each wait on a Selector. It speaks the same Protocol frames
+ * as Connect4BlockingServer, so the same clients can connect to it.
+ *
+ * A player who loses their connection can resume the same way too. Their
+ * new connection is handed to the event loop that runs their game, and each
+ * event loop checks its games once a second for players who haven't come
+ * back or haven't moved in time. Spectators are written to by the
+ * SpectatorHub's own thread, never by an event loop.
+ *
+ * @author Kelly Ellis
+ * @version 1.0
+ */
+public class Connect4NioServer {
+
+    // Room for a few whole frames in each player's buffers
+    private static final int BUFFER_BYTES = 4 * (1 + Protocol.MAX_FRAME);
+    // How often each event loop looks for games that timed out
+    private static final long SWEEP_MILLIS = 1000;
+
+    private final int port;
+    private final Rules rules;
+    private final EventLoop[] loops;
+    private final ServerMetrics metrics;
+    private final PlayerRatings ratings;
+    private final GameLog games;
+    private final Consumer<String> log;
+    private final ResumeTokens<Match> tokens = new ResumeTokens<>();
+    private final SpectatorHub spectators;
+    private int nextLoop;
+    private int sessionNo = 1;
+    private volatile ServerSocketChannel serverSocket;
+    private volatile boolean closed;
+
+    /**
+     * Creates the server. It doesn't listen for players until start() is called.
+     *
+     * @param port The port players connect to
+     * @param rules The size of the board and how many in a row win
+     * @param loopCount The number of event loop threads
+     * @param metrics The counters to report moves and games to
+     * @param ratings The player ratings used for pairing and updated when games end
+     * @param games The log to keep finished games in, or null to not keep them
+     * @param log Where to send the server's messages
+     * @throws IOException If a selector can't be opened
+     */
+    public Connect4NioServer(int port, Rules rules, int loopCount, ServerMetrics metrics, PlayerRatings ratings,
+            GameLog games, Consumer<String> log) throws IOException {
+        this.port = port;
+        this.rules = rules;
+        this.metrics = metrics;
+        this.ratings = ratings;
+        this.games = games;
+        this.log = log;
+        this.spectators = new SpectatorHub(log);
+        loops = new EventLoop[loopCount];
+        for (int i = 0; i < loopCount; i++) {
+            loops[i] = new EventLoop(i);
+        }
+    }
+
+    /**
+     * Starts the event loops and the lobby, then accepts players in this
+     * thread. Players wait in the Matchmaker until they're paired, and both
+     * players of a session are handed to the same event loop so a game is only
+     * ever touched by one thread. Returns once close() is called.
+     *
+     * @throws IOException If the server socket can't be opened
+     */
+    public void start() throws IOException {
+        for (EventLoop loop : loops) {
+            Thread thread = new Thread(loop, "connect4-nio-" + loop.id);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        spectators.start();
+
+        Matchmaker lobby = new Matchmaker((player1, player2) -> {
+            loops[nextLoop].add(new Match(sessionNo++, player1, player2));
+            nextLoop = (nextLoop + 1) % loops.length;
+        }, (player, token) -> {
+            Match match = tokens.find(token);
+            if (match == null) {
+                // the game is over or the token is wrong
+                closeQuietly(player);
+                return;
+            }
+            match.loop.execute(() -> match.resume(token, player));
+        }, spectators::watch, log);
+        lobby.start();
+
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            serverSocket = server;
+            server.bind(new InetSocketAddress(port));
+            log.accept("Server started at socket " + port + " with " + loops.length + " event loops, playing "
+                    + rules);
+
+            while (!closed) {
+                SocketChannel player = server.accept();
+                metrics.connectionAccepted();
+                lobby.add(player, ratings.rating(PlayerRatings.idOf(player)));
+            }
+        }
+        catch (ClosedChannelException ex) {
+            if (!closed) {
+                throw ex;
+            }
+        }
+    }
+
+    /**
+     * Stops accepting players and makes start() return. Games that are still
+     * being played aren't waited for.
+     *
+     * @throws IOException If the server socket can't be closed
+     */
+    public void close() throws IOException {
+        closed = true;
+        ServerSocketChannel socket = serverSocket;
+        if (socket != null) {
+            socket.close();
+        }
+    }
+
+    private static void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        }
+        catch (IOException ex) {
+            // already closed
+        }
+    }
+
+    /**
+     * One selector thread. Matches and resumed players are handed over as
+     * tasks on a queue so the lobby thread never touches the selector's key set.
+     */
+    private class EventLoop implements Runnable {
+        private final int id;
+        private final Selector selector;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        // games on this loop that haven't ended yet
+        private final List<Match> matches = new ArrayList<>();
+        private long nextSweep = System.nanoTime();
+
+        EventLoop(int id) throws IOException {
+            this.id = id;
+            this.selector = Selector.open();
+        }
+
+        /**
+         * Runs a task on this loop's thread
+         */
+        void execute(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        void add(Match match) {
+            match.loop = this;
+            execute(() -> begin(match));
+        }
+
+        public void run() {
+            while (true) {
+                try {
+                    selector.select(SWEEP_MILLIS);
+                    Runnable task;
+                    while ((task = tasks.poll()) != null) {
+                        try {
+                            task.run();
+                        }
+                        catch (RuntimeException ex) {
+                            log.accept("Event loop " + id + " task failed: " + ex);
+                        }
+                    }
+
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        Player player = (Player) key.attachment();
+                        try {
+                            if (key.isValid() && key.isWritable()) {
+                                player.flush();
+                            }
+                            if (key.isValid() && key.isReadable()) {
+                                player.read();
+                            }
+                        }
+                        catch (IOException ex) {
+                            player.match.lost(player);
+                        }
+                        catch (RuntimeException ex) {
+                            // a bug in one session ends that game, not every game on this loop
+                            log.accept("Session " + player.match.sessionNo + " failed: " + ex);
+                            player.match.abandon();
+                        }
+                    }
+
+                    long now = System.nanoTime();
+                    if (now >= nextSweep) {
+                        sweep(now);
+                        nextSweep = now + TimeUnit.MILLISECONDS.toNanos(SWEEP_MILLIS);
+                    }
+                }
+                catch (IOException | RuntimeException ex) {
+                    log.accept("Event loop " + id + " failed: " + ex);
+                }
+            }
+        }
+
+        private void begin(Match match) {
+            matches.add(match);
+            try {
+                match.player1.register(selector);
+                match.player2.register(selector);
+                match.begin();
+            }
+            catch (IOException ex) {
+                match.abandon();
+            }
+        }
+
+        /**
+         * Forgets the games that ended and ends the ones that timed out
+         */
+        private void sweep(long now) {
+            Iterator<Match> it = matches.iterator();
+            while (it.hasNext()) {
+                Match match = it.next();
+                if (!match.over && match.timedOut(now)) {
+                    match.abandon();
+                }
+                if (match.over) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * A session between 2 players. Only its event loop thread uses it.
+     */
+    private class Match {
+        private final int sessionNo;
+        private final SessionBoard board = new SessionBoard(rules);
+        private final String id1;
+        private final String id2;
+        private final long token1;
+        private final long token2;
+        private final SpectatorHub.Broadcast broadcast;
+        private final long started = System.nanoTime();
+        private final long startTime = System.currentTimeMillis();
+        private Player player1;
+        private Player player2;
+        private EventLoop loop;
+        private char turn = 'X';
+        // when the player to move got their turn
+        private long turnStarted = System.nanoTime();
+        private boolean over;
+
+        Match(int sessionNo, SocketChannel player1, SocketChannel player2) {
+            this.sessionNo = sessionNo;
+            this.player1 = new Player(this, player1, 'X');
+            this.player2 = new Player(this, player2, 'O');
+            this.id1 = PlayerRatings.idOf(player1);
+            this.id2 = PlayerRatings.idOf(player2);
+            this.token1 = tokens.issue(this);
+            this.token2 = tokens.issue(this);
+            this.broadcast = spectators.open(sessionNo, rules);
+        }
+
+        /**
+         * Tells each player which player they are, the rules and their resume
+         * token, and lets player 1 know to start
+         */
+        void begin() {
+            metrics.gameStarted();
+            turnStarted = System.nanoTime();
+            player1.frame.hello(1).rules(rules).session(token1).start();
+            player2.frame.hello(2).rules(rules).session(token2);
+            send(player1);
+            send(player2);
+        }
+
+        /**
+         * Plays a move and reports the game status, the same way
+         * Connect4BlockingServer.HandleASession does.
+         */
+        void move(Player from, int column) {
+            if (over || from.piece != turn || from != seat(from.piece)) {
+                // not this player's turn, ignore the move
+                return;
+            }
+            long received = System.nanoTime();
+            int row = board.drop(column, from.piece);
+            if (row == SessionBoard.ILLEGAL) {
+                // the column is full or not on the board, it's still this player's turn
+                from.frame.status(Protocol.ILLEGAL_MOVE);
+                send(from);
+                metrics.moveRejected();
+                return;
+            }
+            Player other = from == player1 ? player2 : player1;
+
+            if (board.isWon(from.piece)) {
+                int status = from == player1 ? Protocol.PLAYER1_WON : Protocol.PLAYER2_WON;
+                from.frame.status(status);
+                other.frame.statusMove(status, row, column);
+                broadcast.move(status, row, column);
+                finish(status);
+            }
+            else if (board.isFull()) {
+                // it's a tie
+                from.frame.status(Protocol.DRAW);
+                other.frame.statusMove(Protocol.DRAW, row, column);
+                broadcast.move(Protocol.DRAW, row, column);
+                finish(Protocol.DRAW);
+            }
+            else {
+                other.frame.statusMove(Protocol.CONTINUE, row, column);
+                broadcast.move(Protocol.CONTINUE, row, column);
+                turn = other.piece;
+                turnStarted = received;
+            }
+            send(from);
+            send(other);
+            metrics.moveMade(System.nanoTime() - received);
+        }
+
+        /**
+         * Puts a player who came back with their token back in their seat on
+         * a new connection, and sends them a snapshot of the game
+         */
+        void resume(long token, SocketChannel channel) {
+            if (over) {
+                closeQuietly(channel);
+                return;
+            }
+            int number = token == token1 ? 1 : 2;
+            Player old = number == 1 ? player1 : player2;
+            // the old connection might not have noticed it's gone yet
+            old.gone = true;
+            old.close();
+            Player player = new Player(this, channel, old.piece);
+            if (number == 1) {
+                player1 = player;
+            }
+            else {
+                player2 = player;
+            }
+            try {
+                player.register(loop.selector);
+            }
+            catch (IOException ex) {
+                lost(player);
+                return;
+            }
+            player.frame.hello(number).rules(rules).session(token).snapshot(board.playerToMove(), board);
+            send(player);
+        }
+
+        /**
+         * Writes a player's pending frame. A player who isn't connected sees
+         * what they missed in the snapshot when they resume.
+         */
+        private void send(Player player) {
+            if (player.gone) {
+                player.frame.clear();
+                return;
+            }
+            try {
+                player.flush();
+            }
+            catch (IOException ex) {
+                lost(player);
+            }
+        }
+
+        /**
+         * Closes a player's connection when it fails. The game waits for them
+         * to resume until the resume timeout runs out.
+         */
+        void lost(Player player) {
+            if (player.gone) {
+                return;
+            }
+            player.gone = true;
+            player.lostAt = System.nanoTime();
+            player.close();
+        }
+
+        /**
+         * @return Returns true if a player has been gone longer than the resume
+         * timeout, or the player to move hasn't moved within the idle timeout
+         */
+        boolean timedOut(long now) {
+            if (player1.gone && now - player1.lostAt > ResumeTokens.RESUME_TIMEOUT_NANOS) {
+                return true;
+            }
+            if (player2.gone && now - player2.lostAt > ResumeTokens.RESUME_TIMEOUT_NANOS) {
+                return true;
+            }
+            return now - turnStarted > ResumeTokens.IDLE_TIMEOUT_NANOS;
+        }
+
+        private Player seat(char piece) {
+            return piece == 'X' ? player1 : player2;
+        }
+
+        /**
+         * Ends the game, updates the ratings and keeps the game in the log
+         */
+        private void finish(int result) {
+            over = true;
+            tokens.retire(token1);
+            tokens.retire(token2);
+            broadcast.finish(result);
+            metrics.gameEnded(result, System.nanoTime() - started);
+            ratings.recordResult(id1, id2, result);
+            if (games != null) {
+                games.append(new GameRecord(id1, id2, startTime, board.columns(), result));
+            }
+        }
+
+        /**
+         * Ends the game and closes both players when it can't go on
+         */
+        void abandon() {
+            if (!over) {
+                finish(GameRecord.ABANDONED);
+            }
+            player1.close();
+            player2.close();
+        }
+    }
+
+    /**
+     * One player's connection. The direct buffers and the frame reader and
+     * writer are made once and reused for every move.
+     */
+    private static class Player {
+        private final Match match;
+        private final SocketChannel channel;
+        private final char piece;
+        private final ByteBuffer in = ByteBuffer.allocateDirect(BUFFER_BYTES);
+        private final ByteBuffer out = ByteBuffer.allocateDirect(BUFFER_BYTES);
+        private final FrameReader reader = new FrameReader();
+        private final FrameWriter frame = new FrameWriter();
+        private SelectionKey key;
+        // set once the connection has failed or been replaced by a resume
+        private boolean gone;
+        private long lostAt;
+
+        Player(Match match, SocketChannel channel, char piece) {
+            this.match = match;
+            this.channel = channel;
+            this.piece = piece;
+        }
+
+        void register(Selector selector) throws IOException {
+            key = channel.register(selector, SelectionKey.OP_READ, this);
+        }
+
+        /**
+         * Reads as much as is available and plays every move in the complete frames
+         */
+        void read() throws IOException {
+            if (channel.read(in) < 0) {
+                throw new ClosedChannelException();
+            }
+            in.flip();
+            while (reader.fill(in)) {
+                int type;
+                while ((type = reader.next()) != FrameReader.NONE) {
+                    if (type != Protocol.MOVE) {
+                        throw new ProtocolException("Unexpected event " + type);
+                    }
+                    match.move(this, reader.arg());
+                }
+            }
+            in.compact();
+        }
+
+        /**
+         * Writes the pending frame and whatever is still queued. If the socket
+         * can't take all of it, waits for the selector to say it's writable again.
+         *
+         * @throws IOException If the connection fails, or the player has stopped
+         * reading and the frame doesn't fit behind what's still queued
+         */
+        void flush() throws IOException {
+            if (frame.size() > out.remaining()) {
+                out.flip();
+                channel.write(out);
+                out.compact();
+                if (frame.size() > out.remaining()) {
+                    throw new IOException("Player " + piece + " isn't reading");
+                }
+            }
+            frame.flushTo(out);
+            out.flip();
+            channel.write(out);
+            out.compact();
+            if (key == null || !key.isValid()) {
+                return;
+            }
+            if (out.position() > 0) {
+                key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+            }
+            else {
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+                if (match.over) {
+                    close();
+                }
+            }
+        }
+
+        void close() {
+            try {
+                channel.close();
+            }
+            catch (IOException ex) {
+                // already closed
+            }
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package core;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * This class runs the computer player's search on several threads at once
+ * using lazy SMP: every thread searches the same position and they share one
+ * transposition table, so each thread gets to reuse what the others found.
+ * The helper threads come from one pool shared by every computer player, sized
+ * to the number of cores, so bot games can't use more threads than the
+ * machine has no matter how many of them are running.
+ *
+ * When the pool is busy a helper can still be waiting in its queue when the
+ * main search is done. The move doesn't wait for it: a helper that hasn't
+ * started by then is cancelled and does nothing when its turn comes.
+ *
+ * @author Kelly Ellis
+ * @version 1.0
+ */
+public class Connect4ParallelSearch {
+
+    private static final ExecutorService HELPERS = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), runnable -> {
+                Thread thread = new Thread(runnable, "connect4-search");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private final Connect4Search[] searches;
+    private final Future<?>[] running;
+    // set by whichever of the helper or the caller gets to it first
+    private final AtomicBoolean[] claimed;
+
+    /**
+     * Creates a parallel search
+     *
+     * @param tableBits The log2 of the number of shared table entries
+     * @param threads The most threads one move may use, including the caller's
+     */
+    public Connect4ParallelSearch(int tableBits, int threads) {
+        int count = Math.max(1, Math.min(threads, Runtime.getRuntime().availableProcessors()));
+        TranspositionTable table = new TranspositionTable(tableBits);
+        searches = new Connect4Search[count];
+        for (int i = 0; i < count; i++) {
+            searches[i] = new Connect4Search(table);
+        }
+        running = new Future<?>[count];
+        claimed = new AtomicBoolean[count];
+    }
+
+    /**
+     * Finds the best column for a player. The calling thread runs the main
+     * search and its answer is the one returned. Helpers start at different
+     * depths and are stopped once the main search is done.
+     *
+     * @param state The game to search
+     * @param player The player whose turn it is, either X or O
+     * @param budgetNanos How long the search may take, in nanoseconds
+     * @return Returns the best column found, from 0 to 6, or -1 if the board is full
+     */
+    public int bestMove(GameState state, char player, long budgetNanos) {
+        for (int i = 1; i < searches.length; i++) {
+            Connect4Search helper = searches[i];
+            int firstDepth = 1 + i % 2;
+            // each helper gets its own copy, the caller may change the game afterwards
+            GameState copy = new GameState(state);
+            helper.resetStop();
+            AtomicBoolean claim = new AtomicBoolean();
+            claimed[i] = claim;
+            running[i] = HELPERS.submit(() -> {
+                if (claim.compareAndSet(false, true)) {
+                    helper.bestMove(copy, player, budgetNanos, firstDepth);
+                }
+            });
+        }
+
+        int best = searches[0].bestMove(state, player, budgetNanos);
+
+        for (int i = 1; i < searches.length; i++) {
+            searches[i].stop();
+        }
+        for (int i = 1; i < searches.length; i++) {
+            if (claimed[i].compareAndSet(false, true)) {
+                // still queued behind other players' searches, so it never runs
+                running[i].cancel(false);
+                running[i] = null;
+                continue;
+            }
+            try {
+                running[i].get();
+            }
+            catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            catch (ExecutionException ex) {
+                ex.printStackTrace();
+            }
+            running[i] = null;
+        }
+        return best;
+    }
+
+    /**
+     * Sets how deep every thread's iterative deepening may go
+     *
+     * @param depth The deepest depth to search, at least 1
+     */
+    public void setMaxDepth(int depth) {
+        for (Connect4Search search : searches) {
+            search.setMaxDepth(depth);
+        }
+    }
+
+    /**
+     * @return Returns the number of threads each move may use
+     */
+    public int getThreads() {
+        return searches.length;
+    }
+
+    /**
+     * @return Returns the positions visited by every thread in the last search
+     */
+    public long getNodes() {
+        long nodes = 0;
+        for (Connect4Search search : searches) {
+            nodes += search.getNodes();
+        }
+        return nodes;
+    }
+
+    /**
+     * @return Returns the score of the last search's best move
+     */
+    public int getLastScore() {
+        return searches[0].getLastScore();
+    }
+
+    /**
+     * @return Returns the deepest depth the main search finished
+     */
+    public int getLastDepth() {
+        return searches[0].getLastDepth();
+    }
+
+    /**
+     * Empties the shared transposition table
+     */
+    public void clear() {
+        searches[0].clear();
+    }
+}
@@ -0,0 +1,350 @@
+package core;
+
+/**
+ * This is the search engine for the Connect4 computer player. It uses negamax
+ * with alpha-beta pruning, tries the center columns first, and deepens one ply
+ * at a time until its time budget runs out. Positions it has already searched
+ * are kept in a fixed-size transposition table made of a long array.
+ *
+ * Each depth usually takes longer than all the depths before it, so once half
+ * the budget is used, no new depth is started: it would most likely run out
+ * of time and be thrown away. A depth that's already running is stopped when
+ * the budget runs out.
+ *
+ * A Connect4Search isn't thread safe, so each thread that searches needs
+ * its own, but several searches can share one TranspositionTable.
+ *
+ * @author Kelly Ellis
+ * @version 1.0
+ */
+public class Connect4Search {
+
+    /**
+     * Score of a win on an empty board. A win scores WIN minus the number of
+     * pieces on the board, so quicker wins score higher and a position's score
+     * doesn't depend on where the search started.
+     */
+    public static final int WIN = 1000;
+
+    // Columns from the center out, the center is worth the most
+    private static final int[] COLUMN_ORDER = {3, 2, 4, 1, 5, 0, 6};
+
+    private static final int BOARD_SIZE = BitBoard.WIDTH * BitBoard.HEIGHT;
+
+    // How often the clock is checked, in nodes
+    private static final int CLOCK_CHECK = 1023;
+
+    private static final int EXACT = 0;
+    private static final int LOWER = 1;
+    private static final int UPPER = 2;
+
+    private final TranspositionTable table;
+
+    private long nodes;
+    private volatile boolean stopRequested;
+    private long deadline;
+    // no new depth is started after this
+    private long deepenUntil;
+    private boolean stopped;
+    private int lastScore;
+    private int lastDepth;
+    private int maxDepth = BOARD_SIZE;
+
+    /**
+     * Creates a search with a transposition table of 2^tableBits entries
+     *
+     * @param tableBits The log2 of the number of table entries
+     */
+    public Connect4Search(int tableBits) {
+        this(new TranspositionTable(tableBits));
+    }
+
+    /**
+     * Creates a search that uses a table which may be shared with other searches
+     *
+     * @param table The transposition table to use
+     */
+    public Connect4Search(TranspositionTable table) {
+        this.table = table;
+    }
+
+    /**
+     * Finds the best column for a player within a time budget. Every finished
+     * depth replaces the best move, so the answer is always from the deepest
+     * search that completed. At least a 1 ply search is always done, so the
+     * column returned is always legal as long as the board isn't full.
+     *
+     * @param state The game to search
+     * @param player The player whose turn it is, either X or O
+     * @param budgetNanos How long the search may take, in nanoseconds
+     * @return Returns the best column found, from 0 to 6, or -1 if the board is full
+     */
+    public int bestMove(GameState state, char player, long budgetNanos) {
+        return bestMove(state, player, budgetNanos, 1);
+    }
+
+    /**
+     * Finds the best column, starting the iterative deepening at a given depth.
+     * Parallel helper searches start at different depths so they fill the
+     * shared table with different positions.
+     *
+     * @param state The game to search
+     * @param player The player whose turn it is, either X or O
+     * @param budgetNanos How long the search may take, in nanoseconds
+     * @param firstDepth The first depth to search
+     * @return Returns the best column found, from 0 to 6, or -1 if the board is full
+     */
+    int bestMove(GameState state, char player, long budgetNanos, int firstDepth) {
+        long current = state.stones(player);
+        long mask = state.mask();
+        int moves = state.moveCount();
+
+        nodes = 0;
+        stopped = false;
+        long start = System.nanoTime();
+        deadline = start + budgetNanos;
+        deepenUntil = start + budgetNanos / 2;
+        lastScore = 0;
+        lastDepth = 0;
+
+        int best = firstPlayable(mask);
+        if (best < 0) {
+            return -1;
+        }
+
+        // take a win right away
+        long wins = BitBoard.winningSpots(current, mask) & BitBoard.playableSpots(mask);
+        if (wins != 0) {
+            lastScore = WIN - moves;
+            return Long.numberOfTrailingZeros(wins) / BitBoard.COLUMN_BITS;
+        }
+
+        int deepest = Math.min(maxDepth, BOARD_SIZE - moves);
+        firstDepth = Math.min(firstDepth, deepest);
+        for (int depth = firstDepth; depth <= deepest; depth++) {
+            if ((stopRequested || System.nanoTime() > deepenUntil) && depth > 1) {
+                break;
+            }
+            int[] result = searchRoot(current, mask, moves, depth);
+            if (stopped && depth > 1) {
+                break;
+            }
+            best = result[0];
+            lastScore = result[1];
+            lastDepth = depth;
+            // the game's result is known, searching deeper won't change it
+            if (Math.abs(lastScore) >= WIN - BOARD_SIZE) {
+                break;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return Returns the number of positions visited by the last search
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * @return Returns the score of the last search's best move
+     */
+    public int getLastScore() {
+        return lastScore;
+    }
+
+    /**
+     * @return Returns the deepest depth the last search finished
+     */
+    public int getLastDepth() {
+        return lastDepth;
+    }
+
+    /**
+     * Sets how deep the iterative deepening may go. The search stops at this
+     * depth even if there is time left in the budget.
+     *
+     * @param depth The deepest depth to search, at least 1
+     */
+    public void setMaxDepth(int depth) {
+        maxDepth = Math.max(1, Math.min(depth, BOARD_SIZE));
+    }
+
+    /**
+     * Asks a search running on another thread to stop as soon as it can.
+     * The search keeps its best move from the depths it already finished.
+     */
+    public void stop() {
+        stopRequested = true;
+    }
+
+    /**
+     * Lets a search that was stopped run again
+     */
+    void resetStop() {
+        stopRequested = false;
+    }
+
+    /**
+     * Empties the transposition table
+     */
+    public void clear() {
+        table.clear();
+    }
+
+    private int[] searchRoot(long current, long mask, int moves, int depth) {
+        int alpha = -WIN - 1;
+        int bestColumn = -1;
+        int ttMove = probeMove(current + mask);
+        for (int i = -1; i < BitBoard.WIDTH; i++) {
+            int column = i < 0 ? ttMove : COLUMN_ORDER[i];
+            if (column < 0 || (i >= 0 && column == ttMove) || !BitBoard.canPlay(mask, column)) {
+                continue;
+            }
+            long move = BitBoard.dropMask(mask, column);
+            // a 1 ply search isn't timed, so there's always a move to return
+            int score = -negamax(current ^ mask, mask | move, moves + 1, depth - 1,
+                    -WIN - 1, -alpha, depth > 1);
+            if (bestColumn < 0 || score > alpha) {
+                alpha = score;
+                bestColumn = column;
+            }
+        }
+        return new int[] {bestColumn, alpha};
+    }
+
+    /**
+     * Scores a position from the point of view of the player to move
+     *
+     * @param current Mask of the pieces of the player to move
+     * @param mask Mask of every occupied spot
+     * @param moves Number of pieces on the board
+     * @param depth How many more plies to search
+     * @param alpha Lowest score that still matters
+     * @param beta Highest score that still matters
+     * @param timed Whether this search can run out of time
+     * @return Returns the position's score
+     */
+    private int negamax(long current, long mask, int moves, int depth, int alpha, int beta,
+                        boolean timed) {
+        nodes++;
+        if (timed && (nodes & CLOCK_CHECK) == 0 && (stopRequested || System.nanoTime() > deadline)) {
+            stopped = true;
+        }
+        if (stopped) {
+            return 0;
+        }
+        if (moves == BOARD_SIZE) {
+            return 0;
+        }
+
+        long playable = BitBoard.playableSpots(mask);
+        if ((BitBoard.winningSpots(current, mask) & playable) != 0) {
+            return WIN - moves;
+        }
+
+        long opponent = current ^ mask;
+        long threats = BitBoard.winningSpots(opponent, mask);
+        long forced = threats & playable;
+        if (Long.bitCount(forced) > 1) {
+            // can't block both
+            return -(WIN - moves - 1);
+        }
+        if (depth <= 0) {
+            return evaluate(current, opponent, mask);
+        }
+
+        long key = current + mask;
+        long data = table.probe(key);
+        int ttMove = -1;
+        if (data != 0) {
+            int entryDepth = (int) (data >>> 12) & 0xFF;
+            int entryScore = (int) (data & 0xFFF) - 2048;
+            int flag = (int) (data >>> 20) & 3;
+            ttMove = (int) (data >>> 22) & 0xF;
+            if (ttMove == 0xF) {
+                ttMove = -1;
+            }
+            if (entryDepth >= depth) {
+                if (flag == EXACT
+                        || (flag == LOWER && entryScore >= beta)
+                        || (flag == UPPER && entryScore <= alpha)) {
+                    return entryScore;
+                }
+            }
+        }
+
+        int originalAlpha = alpha;
+        int best = -WIN - 1;
+        int bestColumn = -1;
+        for (int i = -1; i < BitBoard.WIDTH; i++) {
+            int column = i < 0 ? ttMove : COLUMN_ORDER[i];
+            if (column < 0 || (i >= 0 && column == ttMove) || !BitBoard.canPlay(mask, column)) {
+                continue;
+            }
+            long move = BitBoard.dropMask(mask, column);
+            if (forced != 0 && move != forced) {
+                // has to block the opponent's win
+                continue;
+            }
+            int score = -negamax(opponent, mask | move, moves + 1, depth - 1, -beta, -alpha, timed);
+            if (stopped) {
+                return 0;
+            }
+            if (score > best) {
+                best = score;
+                bestColumn = column;
+            }
+            if (score > alpha) {
+                alpha = score;
+            }
+            if (alpha >= beta) {
+                break;
+            }
+        }
+
+        int flag = best <= originalAlpha ? UPPER : best >= beta ? LOWER : EXACT;
+        store(key, best, depth, flag, bestColumn);
+        return best;
+    }
+
+    /**
+     * Rough score for a position that isn't searched any deeper. Counts the
+     * empty spots that would win for each player.
+     */
+    private static int evaluate(long current, long opponent, long mask) {
+        long mine = BitBoard.winningSpots(current, mask);
+        long theirs = BitBoard.winningSpots(opponent, mask);
+        int score = 4 * (Long.bitCount(mine) - Long.bitCount(theirs));
+        // center column pieces take part in the most lines
+        score += Long.bitCount(current & BitBoard.columnMask(3)) - Long.bitCount(opponent & BitBoard.columnMask(3));
+        return score;
+    }
+
+    private void store(long key, int score, int depth, int flag, int column) {
+        long data = (score + 2048L)
+                | ((long) Math.min(depth, 0xFF) << 12)
+                | ((long) flag << 20)
+                | ((long) (column < 0 ? 0xF : column) << 22);
+        table.store(key, data);
+    }
+
+    private int probeMove(long key) {
+        long data = table.probe(key);
+        if (data == 0) {
+            return -1;
+        }
+        int column = (int) (data >>> 22) & 0xF;
+        return column == 0xF ? -1 : column;
+    }
+
+    private static int firstPlayable(long mask) {
+        for (int column : COLUMN_ORDER) {
+            if (BitBoard.canPlay(mask, column)) {
+                return column;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,219 @@
+package core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class plays the computer player against itself over and over with no
+ * one watching, to make games for training and analysis. Every core gets its
+ * own game and computer player, and the games are written to one file as
+ * they finish.
+ *
+ * The computer looks a fixed number of moves ahead instead of thinking for a
+ * fixed time, so a game takes only as long as its searches need. Each game
+ * starts with a few random moves so the games aren't all alike.
+ *
+ * The file starts with MAGIC and VERSION as 2 ints. Each game is then: move
+ * count (1 byte), result (1 byte, Protocol.PLAYER1_WON, Protocol.PLAYER2_WON
+ * or Protocol.DRAW), the columns 2 to a byte with the first move in the high
+ * 4 bits, and a 2 byte score for each move from the mover's side.
+ * NO_SCORE marks random and opening book moves.
+ *
+ * Usage: Connect4SelfPlay [file] [games] [depth] [threads] [random moves]
+ *
+ * @author Kelly Ellis
+ * @version 1.0
+ */
+public class Connect4SelfPlay {
+
+    public static final int MAGIC = 0x43345350;
+    public static final int VERSION = 1;
+
+    /** Score written for a move that wasn't searched */
+    public static final short NO_SCORE = Short.MIN_VALUE;
+
+    private static final int BOARD_SIZE = BitBoard.WIDTH * BitBoard.HEIGHT;
+    // Longest a game can be once encoded
+    private static final int MAX_RECORD_BYTES = 2 + (BOARD_SIZE + 1) / 2 + 2 * BOARD_SIZE;
+    // Each thread writes its games to the file this many bytes at a time
+    private static final int CHUNK_BYTES = 256 * 1024;
+
+    private final FileChannel out;
+    private final int depth;
+    private final int randomMoves;
+    private final AtomicLong gamesLeft = new AtomicLong();
+    private final LongAdder gamesPlayed = new LongAdder();
+    private final LongAdder movesPlayed = new LongAdder();
+    private final long[] results = new long[Protocol.DRAW + 1];
+
+    /**
+     * Creates a self-play run that writes to a file
+     *
+     * @param out The file to write the games to, positioned after the header
+     * @param depth How many moves ahead the computer looks
+     * @param randomMoves How many random moves each game starts with
+     */
+    public Connect4SelfPlay(FileChannel out, int depth, int randomMoves) {
+        this.out = out;
+        this.depth = depth;
+        this.randomMoves = randomMoves;
+    }
+
+    /**
+     * Plays games on several threads until enough games are played,
+     * printing progress every 5 seconds.
+     *
+     * @param games How many games to play
+     * @param threads How many games to play at once
+     * @throws InterruptedException If the thread is interrupted while waiting
+     */
+    public void run(long games, int threads) throws InterruptedException {
+        gamesLeft.set(games);
+        long start = System.nanoTime();
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            long seed = i;
+            workers[i] = new Thread(() -> play(new Random(seed)), "connect4-self-play-" + i);
+            workers[i].start();
+        }
+        for (Thread worker : workers) {
+            while (worker.isAlive()) {
+                worker.join(5000);
+                if (worker.isAlive()) {
+                    report(start);
+                }
+            }
+        }
+        report(start);
+        synchronized (results) {
+            System.out.printf("Player 1 won %d, player 2 won %d, ties %d%n", results[Protocol.PLAYER1_WON],
+                    results[Protocol.PLAYER2_WON], results[Protocol.DRAW]);
+        }
+    }
+
+    /**
+     * One thread's games. Games are encoded into the thread's own buffer,
+     * which is only written to the file when it's full, so the threads hardly
+     * ever wait for each other.
+     */
+    private void play(Random rand) {
+        Connect4 game = new Connect4();
+        GameState state = game.getState();
+        Connect4ComputerPlayer computer = new Connect4ComputerPlayer(game);
+        computer.setMaxThreads(1);
+        computer.setMaxDepth(depth);
+        ByteBuffer chunk = ByteBuffer.allocate(CHUNK_BYTES);
+        byte[] columns = new byte[BOARD_SIZE];
+        short[] scores = new short[BOARD_SIZE];
+        long[] counts = new long[results.length];
+
+        try {
+            while (gamesLeft.getAndDecrement() > 0) {
+                state.reset();
+                int moves = 0;
+                char player = 'X';
+                while (!game.checkWin() && !game.boardIsFull()) {
+                    int column;
+                    if (moves < randomMoves) {
+                        column = randomColumn(state, rand);
+                        scores[moves] = NO_SCORE;
+                    }
+                    else {
+                        column = computer.chooseColumn();
+                        int score = computer.getLastScore();
+                        scores[moves] = score == Connect4ComputerPlayer.UNKNOWN_SCORE ? NO_SCORE : (short) score;
+                    }
+                    game.dropPiece(player, column + 1);
+                    columns[moves++] = (byte) column;
+                    player = player == 'X' ? 'O' : 'X';
+                }
+
+                int result = !state.hasWinner() ? Protocol.DRAW
+                        : state.getWinner() == 'X' ? Protocol.PLAYER1_WON : Protocol.PLAYER2_WON;
+                counts[result]++;
+                if (chunk.remaining() < MAX_RECORD_BYTES) {
+                    write(chunk);
+                }
+                encode(chunk, columns, scores, moves, result);
+                gamesPlayed.increment();
+                movesPlayed.add(moves);
+            }
+            write(chunk);
+        }
+        catch (IOException ex) {
+            ex.printStackTrace();
+        }
+        synchronized (results) {
+            for (int i = 0; i < results.length; i++) {
+                results[i] += counts[i];
+            }
+        }
+    }
+
+    private static int randomColumn(GameState state, Random rand) {
+        int column;
+        do {
+            column = rand.nextInt(BitBoard.WIDTH);
+        }
+        while (!state.canPlay(column));
+        return column;
+    }
+
+    private static void encode(ByteBuffer chunk, byte[] columns, short[] scores, int moves, int result) {
+        chunk.put((byte) moves);
+        chunk.put((byte) result);
+        for (int i = 0; i < moves; i += 2) {
+            int low = i + 1 < moves ? columns[i + 1] : 0;
+            chunk.put((byte) (columns[i] << 4 | low));
+        }
+        for (int i = 0; i < moves; i++) {
+            chunk.putShort(scores[i]);
+        }
+    }
+
+    /**
+     * Writes a thread's buffer to the file as one piece, so games from
+     * different threads are never mixed together
+     */
+    private void write(ByteBuffer chunk) throws IOException {
+        chunk.flip();
+        synchronized (out) {
+            while (chunk.hasRemaining()) {
+                out.write(chunk);
+            }
+        }
+        chunk.clear();
+    }
+
+    private void report(long start) {
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long games = gamesPlayed.sum();
+        System.out.printf("%d games (%.0f/s), %d moves (%.0f/s)%n", games, games / seconds,
+                movesPlayed.sum(), movesPlayed.sum() / seconds);
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Path path = Paths.get(args.length > 0 ? args[0] : "connect4.selfplay");
+        long games = args.length > 1 ? Long.parseLong(args[1]) : 10000;
+        int depth = args.length > 2 ? Integer.parseInt(args[2]) : 6;
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        int randomMoves = args.length > 4 ? Integer.parseInt(args[4]) : 4;
+
+        System.out.println("Playing " + games + " games at depth " + depth + " on " + threads + " threads");
+        try (FileChannel out = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(8).putInt(MAGIC).putInt(VERSION);
+            header.flip();
+            out.write(header);
+            new Connect4SelfPlay(out, depth, randomMoves).run(games, threads);
+        }
+        System.out.println("Wrote " + path);
+    }
+}
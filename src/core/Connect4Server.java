@@ -1,8 +1,11 @@
 package core;
 
-import java.io.*;
-import java.net.*;
+import java.io.IOException;
 import java.util.Date;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import javafx.application.Application;
 import javafx.application.Platform;
 import javafx.scene.Scene;
@@ -11,15 +14,30 @@ import javafx.scene.control.TextArea;
 import javafx.stage.Stage;
 
 /**
- * This class creates the Connect4 Server for players to play on
+ * This class creates the Connect4 Server for players to play on, with a
+ * window that shows what the server is doing. The server itself is the same
+ * one Connect4HeadlessServer runs.
  *
  * @author Kelly Ellis, Hassan/Bansal
  * @version 1.0
  */
 public class Connect4Server extends Application {
 
-    private int sessionNo = 1;
-    //public static char[][] board = new char[6][7];
+    private final ServerMetrics metrics = new ServerMetrics();
+    private final PlayerRatings ratings = new PlayerRatings();
+
+    private final ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "connect4-metrics");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * @return Returns the counters for the games played on this server
+     */
+    public ServerMetrics getMetrics() {
+        return metrics;
+    }
 
     @Override
     /**
@@ -34,248 +52,29 @@ public class Connect4Server extends Application {
         primaryStage.setScene(scene);
         primaryStage.show();
 
-        new Thread( () -> {
-            try {
-                ServerSocket serverSocket = new ServerSocket(8004);
-                Platform.runLater(() -> text.appendText(new Date() + ": Server started at socket 8004\n"));
-
-                while (true) {
-                    Platform.runLater(() -> text.appendText(new Date() + ": Wait for players to join session " +
-                            sessionNo + '\n'));
+        // report the game counts every 10 seconds
+        reporter.scheduleAtFixedRate(() -> {
+            int active = metrics.getActiveGames();
+            double rate = metrics.sampleMovesPerSecond();
+            long p99 = metrics.getMoveLatencyP99Micros();
+            Platform.runLater(() -> text.appendText(new Date() + ": Active games: " + active +
+                    String.format(", moves/sec: %.1f, move p99: %d us%n", rate, p99)));
+        }, 10, 10, TimeUnit.SECONDS);
 
-                    Socket player1 = serverSocket.accept();
+        Consumer<String> log = message ->
+                Platform.runLater(() -> text.appendText(new Date() + ": " + message + '\n'));
 
-                    Platform.runLater(() -> {
-                        text.appendText(new Date() + ": Player 1 joined session " +
-                                sessionNo + '\n');
-                        text.appendText("Player 1's IP address: " +
-                                player1.getInetAddress().getHostAddress() + '\n');
-                    });
-
-                    new DataOutputStream(player1.getOutputStream()).writeInt(1);
-
-                    // connect to player2
-                    Socket player2 = serverSocket.accept();
-
-                    Platform.runLater(() -> {
-                        text.appendText(new Date() + ": Player 2 joined session " + sessionNo + '\n');
-                        text.appendText("Player 2's IP address " +
-                                player2.getInetAddress().getHostAddress() + '\n');
-                    });
-
-                    new DataOutputStream(player2.getOutputStream()).writeInt(2);
-
-                    Platform.runLater(() -> text.appendText(new Date() +
-                            ": Start a thread for session " + sessionNo++ + '\n'));
-
-                    new Thread(new HandleASession(player1, player2)).start();
-                }
-            }
-            catch(IOException ex) {
-                ex.printStackTrace();
-            }
-        }).start();
-    }
-
-    /**
-     * Handles new sessions with 2 players.
-     */
-    public static class HandleASession implements Runnable {
-        private Socket player1;
-        private Socket player2;
-
-        public static char[][] board = new char[6][7];
-
-        /**
-         * Creates the game board with 2 players
-         * @param player1 First player to connect to server
-         * @param player2 Second player to connect to server
-         */
-        public HandleASession(Socket player1, Socket player2) {
-            this.player1 = player1;
-            this.player2 = player2;
-
-            for (int i = 0; i < 6; i++) {
-                for (int j = 0; j < 7; j++) {
-                    board[i][j] = ' ';
-                }
-            }
-        }
-
-        /**
-         * The run method for the thread. Sets up I/O streams for each player and
-         * controls the game logic/flow. Receives moves from each player and continuously
-         * checks for wins/ties and updates each player with the other player's moves.
-         */
-        public void run() {
+        new Thread(() -> {
             try {
-
-                DataInputStream fromPlayer1 = new DataInputStream(player1.getInputStream());
-                DataOutputStream toPlayer1 = new DataOutputStream(player1.getOutputStream());
-                DataInputStream fromPlayer2 = new DataInputStream(player2.getInputStream());
-                DataOutputStream toPlayer2 = new DataOutputStream(player2.getOutputStream());
-
-                // let player1 know to start
-                toPlayer1.writeInt(1);
-
-                // Continuously serve the players and determine and report
-                // the game status to the players
-                while (true) {
-                    // receive move from player1
-                    int row = fromPlayer1.readInt();
-                    int column = fromPlayer1.readInt();
-                    board[row][column] = 'X';
-
-                    // Check if player 1 wins
-                    if (isWon('X')) {
-                        toPlayer1.writeInt(1);
-                        toPlayer2.writeInt(1);
-                        sendMove(toPlayer2, row, column);
-                        player1 = null;
-                        player2 = null;
-                        break;
-                    }
-                    else if (isFull()) {
-                        // it's a tie
-                        toPlayer1.writeInt(3);
-                        toPlayer2.writeInt(3);
-                        sendMove(toPlayer2, row, column);
-                        player1 = null;
-                        player2 = null;
-                        break;
-                    }
-                    else {
-                        // it's player 2's turn now
-                        toPlayer2.writeInt(4);
-                        sendMove(toPlayer2, row, column);
-                    }
-
-                    // receive move from player 2
-                    row = fromPlayer2.readInt();
-                    column = fromPlayer2.readInt();
-                    board[row][column] = 'O';
-
-                    if (isWon('O')) {
-                        toPlayer1.writeInt(2);
-                        toPlayer2.writeInt(2);
-                        sendMove(toPlayer1, row, column);
-                        player1 = null;
-                        player2 = null;
-                        break;
-                    }
-                    else {
-                        // it's player 1's turn now
-                        toPlayer1.writeInt(4);
-                        sendMove(toPlayer1, row, column);
-
-                    }
-                }
+                Connect4HeadlessServer.serve(metrics, ratings, log);
             }
-            catch(IOException ex) {
+            catch (IOException ex) {
                 ex.printStackTrace();
             }
-        }
-
-        /**
-         * Sends each player's moves to the other player
-         *
-         * @param out The output stream for the player to send moves to
-         * @param row The row that the player put their piece into
-         * @param column The column that the player put their piece into
-         * @throws IOException
-         */
-        public static void sendMove(DataOutputStream out, int row, int column) throws IOException {
-            out.writeInt(row); // send row
-            out.writeInt(column);
-        }
-
-        /**
-         * Checks for a tie
-         *
-         * @return Returns true if the game board is full and there is a tie.
-         * Returns false otherwise.
-         */
-        public static boolean isFull() {
-
-            for (int i = 0; i < 6; i++) {
-                for (int j = 0; j < 7; j++) {
-                    if (board[i][j] == ' ')
-                        return false;
-                }
-            }
-            return true;
-        }
-
-        /**
-         * Checks for a win by checking for 4 in a row in the rows, columns,
-         * and each diagonal.
-         *
-         * @param token Takes in the player's game piece - X or O
-         * @return Returns true if there is a win, false otherwise.
-         */
-        public static boolean isWon(char token) {
-
-            boolean rowWin = false;
-            boolean colWin = false;
-            boolean diagTLWin = false;
-            boolean diagBLWin = false;
-
-            // check rows
-            for (int i = 0; i <= 5; i++) {
-                for (int j = 0; j <=3; j++) {
-                    if (board[i][j] == token && board[i][j+1] == token && board[i][j+2] == token
-                            && board[i][j+3] == token) {
-                        rowWin = true;
-                        break;
-                    }
-                }
-            }
-
-            // check columns
-            for (int i = 0; i <= 2; i++) {
-                for (int j = 0; j <= 6; j++) {
-                    if (board[i][j] == token && board[i+1][j] == token && board[i+2][j] == token
-                    && board[i+3][j] == token) {
-                        colWin = true;
-                        break;
-                    }
-                }
-            }
-
-            // check diagonal from bottom left to top right
-            for (int i = 0; i <=2; i++) {
-                for (int j = 3; j <= 6; j++) {
-                    if (board[i][j] == token && board[i+1][j-1] == token && board[i+2][j-2] == token
-                    && board[i+3][j-3] == token) {
-                        diagBLWin = true;
-                        break;
-
-                    }
-                }
-            }
-
-            // check diagonal from top left to bottom right
-            for (int i = 0; i <= 2; i++) {
-                for (int j = 0; j <= 3; j++) {
-                    if (board[i][j] == token && board[i+1][j+1] == token && board[i+2][j+2] == token
-                    && board[i+3][j+3] == token) {
-                        diagTLWin = true;
-                        break;
-
-                    }
-                }
-            }
-
-            if (rowWin || colWin || diagBLWin || diagTLWin) {
-                return true;
-            }
-            else
-                return false;
-        }
+        }).start();
     }
 
     public static void main(String[] args) {
         launch(args);
     }
 }
-
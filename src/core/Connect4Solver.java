@@ -0,0 +1,286 @@
+package core;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Paths;
+
+/**
+ * This class solves Connect4 positions exactly. Unlike the computer player's
+ * search it never stops early, so the score it returns is the game's real
+ * result with perfect play from both sides.
+ *
+ * A score is positive if the player to move wins, negative if they lose and 0
+ * for a tie. A win on the player's last possible piece scores 1, and every
+ * piece earlier than that adds 1, so quicker wins score higher.
+ *
+ * Scores for positions near the end of the game can be kept in an
+ * EndgameTable, so asking about the same position again is a single lookup.
+ *
+ * A Connect4Solver isn't thread safe, so each thread needs its own.
+ *
+ * @author Kelly Ellis
+ * @version 1.0
+ */
+public class Connect4Solver {
+
+    private static final int BOARD_SIZE = BitBoard.WIDTH * BitBoard.HEIGHT;
+    private static final int MIN_SCORE = -BOARD_SIZE / 2 + 3;
+
+    // Columns from the center out, the center is worth the most
+    private static final int[] COLUMN_ORDER = {3, 2, 4, 1, 5, 0, 6};
+
+    private final TranspositionTable table;
+    private final EndgameTable endgame;
+    private long nodes;
+
+    // Moves to try at each ply, sorted by how many threats they make
+    private final long[][] sortedMoves = new long[BOARD_SIZE][BitBoard.WIDTH];
+    private final int[][] moveScores = new int[BOARD_SIZE][BitBoard.WIDTH];
+
+    /**
+     * Creates a solver without an endgame table
+     *
+     * @param tableBits The log2 of the number of transposition table entries
+     */
+    public Connect4Solver(int tableBits) {
+        this(tableBits, null);
+    }
+
+    /**
+     * Creates a solver
+     *
+     * @param tableBits The log2 of the number of transposition table entries
+     * @param endgame The table to read and store endgame scores, or null
+     */
+    public Connect4Solver(int tableBits, EndgameTable endgame) {
+        this.table = new TranspositionTable(tableBits);
+        this.endgame = endgame;
+    }
+
+    /**
+     * Solves a position
+     *
+     * @param state The game, which must not already have a winner
+     * @param player The player whose turn it is, either X or O
+     * @return Returns the exact score for the player to move
+     */
+    public int solve(GameState state, char player) {
+        return solve(state.stones(player), state.mask(), state.moveCount());
+    }
+
+    /**
+     * Finds the best column for the player to move
+     *
+     * @param state The game, which must not already have a winner
+     * @param player The player whose turn it is, either X or O
+     * @return Returns the column from 0 to 6, or -1 if the board is full
+     */
+    public int bestMove(GameState state, char player) {
+        long current = state.stones(player);
+        long mask = state.mask();
+        int moves = state.moveCount();
+
+        long wins = BitBoard.winningSpots(current, mask) & BitBoard.playableSpots(mask);
+        if (wins != 0) {
+            return Long.numberOfTrailingZeros(wins) / BitBoard.COLUMN_BITS;
+        }
+        int best = -1;
+        int bestScore = Integer.MIN_VALUE;
+        for (int column : COLUMN_ORDER) {
+            if (BitBoard.canPlay(mask, column)) {
+                long move = BitBoard.dropMask(mask, column);
+                int score = -solve(current ^ mask, mask | move, moves + 1);
+                if (score > bestScore) {
+                    bestScore = score;
+                    best = column;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return Returns the number of positions visited since the solver was made
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Empties the transposition table. The endgame table is kept.
+     */
+    public void reset() {
+        table.clear();
+    }
+
+    /**
+     * Solves a position by narrowing the score down with null window searches
+     */
+    private int solve(long current, long mask, int moves) {
+        if (moves == BOARD_SIZE) {
+            return 0;
+        }
+        if ((BitBoard.winningSpots(current, mask) & BitBoard.playableSpots(mask)) != 0) {
+            return (BOARD_SIZE + 1 - moves) / 2;
+        }
+        boolean stored = endgame != null && endgame.covers(moves);
+        if (stored) {
+            int known = endgame.get(current + mask);
+            if (known != EndgameTable.UNKNOWN) {
+                return known;
+            }
+        }
+
+        int min = -(BOARD_SIZE - moves) / 2;
+        int max = (BOARD_SIZE + 1 - moves) / 2;
+        while (min < max) {
+            int middle = min + (max - min) / 2;
+            if (middle <= 0 && min / 2 < middle) {
+                middle = min / 2;
+            }
+            else if (middle >= 0 && max / 2 > middle) {
+                middle = max / 2;
+            }
+            int result = negamax(current, mask, moves, middle, middle + 1);
+            if (result <= middle) {
+                max = result;
+            }
+            else {
+                min = result;
+            }
+        }
+
+        if (stored) {
+            endgame.put(current + mask, min);
+        }
+        return min;
+    }
+
+    /**
+     * Alpha-beta search of a position where the player to move can't win
+     * right away. The transposition table keeps upper bounds of scores.
+     */
+    private int negamax(long current, long mask, int moves, int alpha, int beta) {
+        nodes++;
+
+        long opponent = current ^ mask;
+        long possible = BitBoard.playableSpots(mask);
+        long threats = BitBoard.winningSpots(opponent, mask);
+        long forced = possible & threats;
+        if (forced != 0) {
+            if ((forced & (forced - 1)) != 0) {
+                // two threats, can't block both
+                return -(BOARD_SIZE - moves) / 2;
+            }
+            possible = forced;
+        }
+        // never play right under a spot the opponent needs
+        possible &= ~(threats >> 1);
+        if (possible == 0) {
+            return -(BOARD_SIZE - moves) / 2;
+        }
+        if (moves >= BOARD_SIZE - 2) {
+            return 0;
+        }
+
+        int min = -(BOARD_SIZE - 2 - moves) / 2;
+        if (alpha < min) {
+            alpha = min;
+            if (alpha >= beta) {
+                return alpha;
+            }
+        }
+        int max = (BOARD_SIZE - 1 - moves) / 2;
+        long key = current + mask;
+        long upper = table.probe(key);
+        if (upper != 0) {
+            max = (int) upper + MIN_SCORE - 1;
+        }
+        else if (endgame != null && endgame.covers(moves)) {
+            int known = endgame.get(key);
+            if (known != EndgameTable.UNKNOWN) {
+                return known;
+            }
+        }
+        if (beta > max) {
+            beta = max;
+            if (alpha >= beta) {
+                return beta;
+            }
+        }
+
+        // sort the moves by how many winning spots they leave, center first on ties
+        long[] sorted = sortedMoves[moves];
+        int[] scores = moveScores[moves];
+        int count = 0;
+        for (int i = BitBoard.WIDTH - 1; i >= 0; i--) {
+            long move = possible & BitBoard.columnMask(COLUMN_ORDER[i]);
+            if (move != 0) {
+                int score = Long.bitCount(BitBoard.winningSpots(current | move, mask));
+                int at = count++;
+                while (at > 0 && scores[at - 1] > score) {
+                    sorted[at] = sorted[at - 1];
+                    scores[at] = scores[at - 1];
+                    at--;
+                }
+                sorted[at] = move;
+                scores[at] = score;
+            }
+        }
+
+        for (int i = count - 1; i >= 0; i--) {
+            int score = -negamax(opponent, mask | sorted[i], moves + 1, -beta, -alpha);
+            if (score >= beta) {
+                return score;
+            }
+            if (score > alpha) {
+                alpha = score;
+            }
+        }
+
+        table.store(key, alpha - MIN_SCORE + 1);
+        return alpha;
+    }
+
+    /**
+     * Solves positions given as strings of columns from 1 to 7, one per line,
+     * and prints each score and best column followed by the throughput.
+     *
+     * Usage: Connect4Solver [endgame table file] &lt; positions
+     *
+     * @param args The optional endgame table file
+     * @throws IOException If the positions or table can't be read
+     */
+    public static void main(String[] args) throws IOException {
+        EndgameTable endgame = args.length > 0 ? EndgameTable.open(Paths.get(args[0]), 22, 16) : null;
+        Connect4Solver solver = new Connect4Solver(24, endgame);
+        BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+
+        int solved = 0;
+        long start = System.nanoTime();
+        String line;
+        while ((line = in.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            GameState state = new GameState();
+            char player = 'X';
+            for (char c : line.split("\\s")[0].toCharArray()) {
+                state.drop(player, c - '1');
+                player = player == 'X' ? 'O' : 'X';
+            }
+            int score = solver.solve(state, player);
+            int column = solver.bestMove(state, player);
+            System.out.println(line + " score " + score + " best column " + (column + 1));
+            solved++;
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d positions in %.2f s, %.1f positions/s, %.0f nodes/s%n",
+                solved, seconds, solved / seconds, solver.getNodes() / seconds);
+        if (endgame != null) {
+            endgame.close();
+        }
+    }
+}
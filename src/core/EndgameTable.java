@@ -0,0 +1,160 @@
+package core;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * This class is an on-disk table of exact scores for positions near the end
+ * of the game, filled in by Connect4Solver as it solves them. The file is
+ * memory-mapped for reading and writing, so lookups are just memory reads and
+ * the scores are still there the next time the table is opened.
+ *
+ * The file is a 16 byte header (magic, version, the log2 of the number of
+ * slots and the most empty spots a position may have) followed by 8 byte
+ * slots. A slot holds the position key shifted left by 8 bits with the score
+ * plus 128 in the low byte, and empty slots are 0. A full run of slots just
+ * replaces the first one, since the table is only a cache.
+ *
+ * Reading is safe from any thread, but only one thread may write at a time.
+ *
+ * @author Kelly Ellis
+ * @version 1.0
+ */
+public final class EndgameTable implements Closeable {
+
+    /** Returned by get when a position isn't in the table */
+    public static final int UNKNOWN = Integer.MIN_VALUE;
+
+    private static final int MAGIC = 0x43344554; // "C4ET"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+
+    // Slots tried before giving up on a lookup
+    private static final int MAX_PROBES = 8;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer slots;
+    private final int slotBits;
+    private final int slotMask;
+    private final int maxEmpty;
+
+    private EndgameTable(FileChannel channel, MappedByteBuffer slots, int slotBits, int maxEmpty) {
+        this.channel = channel;
+        this.slots = slots;
+        this.slotBits = slotBits;
+        this.slotMask = (1 << slotBits) - 1;
+        this.maxEmpty = maxEmpty;
+    }
+
+    /**
+     * Opens a table file, making a new empty one if it doesn't exist yet
+     *
+     * @param file The table file
+     * @param slotBits The log2 of the number of slots, used for a new file
+     * @param maxEmpty The most empty spots a stored position may have, used for a new file
+     * @return Returns the table
+     * @throws IOException If the file can't be opened or isn't an endgame table
+     */
+    public static EndgameTable open(Path file, int slotBits, int maxEmpty) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            boolean created = channel.size() == 0;
+            if (!created) {
+                MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+                if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+                    throw new IOException("Not a Connect4 endgame table");
+                }
+                slotBits = header.getInt(8);
+                maxEmpty = header.getInt(12);
+            }
+            MappedByteBuffer slots = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                    HEADER_BYTES + ((long) 8 << slotBits));
+            if (created) {
+                slots.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, slotBits).putInt(12, maxEmpty);
+            }
+            return new EndgameTable(channel, slots, slotBits, maxEmpty);
+        }
+        catch (IOException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Checks if a position is close enough to the end of the game to be stored
+     *
+     * @param moves The number of pieces on the board
+     * @return Returns true if positions with that many pieces are stored
+     */
+    public boolean covers(int moves) {
+        return BitBoard.WIDTH * BitBoard.HEIGHT - moves <= maxEmpty;
+    }
+
+    /**
+     * Looks up a position's score
+     *
+     * @param key The position key
+     * @return Returns the score, or UNKNOWN if it isn't stored
+     */
+    public int get(long key) {
+        int slot = slotFor(key);
+        for (int i = 0; i < MAX_PROBES; i++) {
+            long entry = slots.getLong(HEADER_BYTES + (slot << 3));
+            if (entry == 0) {
+                return UNKNOWN;
+            }
+            if (entry >>> 8 == key) {
+                return (int) (entry & 0xFF) - 128;
+            }
+            slot = (slot + 1) & slotMask;
+        }
+        return UNKNOWN;
+    }
+
+    /**
+     * Stores a position's score
+     *
+     * @param key The position key
+     * @param score The exact score
+     */
+    public void put(long key, int score) {
+        long entry = (key << 8) | (score + 128);
+        int first = slotFor(key);
+        int slot = first;
+        for (int i = 0; i < MAX_PROBES; i++) {
+            long old = slots.getLong(HEADER_BYTES + (slot << 3));
+            if (old == 0 || old >>> 8 == key) {
+                slots.putLong(HEADER_BYTES + (slot << 3), entry);
+                return;
+            }
+            slot = (slot + 1) & slotMask;
+        }
+        slots.putLong(HEADER_BYTES + (first << 3), entry);
+    }
+
+    /**
+     * Writes the table's changes out to the file
+     */
+    public void flush() {
+        slots.force();
+    }
+
+    /**
+     * Writes the table out and closes the file
+     *
+     * @throws IOException If the file can't be closed
+     */
+    public void close() throws IOException {
+        flush();
+        channel.close();
+    }
+
+    private int slotFor(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> (64 - slotBits));
+    }
+}
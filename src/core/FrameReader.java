@@ -0,0 +1,208 @@
+package core;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+
+/**
+ * This class reads Protocol events one at a time. A whole frame is read into
+ * a reused byte array, then next() steps through its events. A reader made
+ * with a stream reads the next frame when the current one runs out, and one
+ * made without a stream is filled from buffers by the NIO server.
+ *
+ * @author Kelly Ellis
+ * @version 1.0
+ */
+public class FrameReader {
+
+    /** Returned by next when a reader without a stream has no events left */
+    public static final int NONE = 0;
+
+    private final DataInputStream in;
+    private final byte[] frame = new byte[Protocol.MAX_FRAME];
+    private int length;
+    private int position;
+
+    private int arg;
+    private int data;
+    private long token;
+    // where the last snapshot's moves start in the frame
+    private int snapshotStart;
+
+    /**
+     * Creates a reader that reads frames from a stream
+     *
+     * @param in The stream to read from
+     */
+    public FrameReader(InputStream in) {
+        this.in = new DataInputStream(in);
+    }
+
+    /**
+     * Creates a reader that is filled from buffers with fill
+     */
+    public FrameReader() {
+        this.in = null;
+    }
+
+    /**
+     * Reads the next event, reading a new frame from the stream if needed
+     *
+     * @return Returns the event's type, or NONE if there is no stream and no events left
+     * @throws IOException If the stream ends or can't be read
+     */
+    public int next() throws IOException {
+        while (position >= length) {
+            if (in == null) {
+                return NONE;
+            }
+            length = in.readUnsignedByte();
+            position = 0;
+            in.readFully(frame, 0, length);
+        }
+        int header = frame[position++] & 0xFF;
+        int type = header >>> 4;
+        arg = header & 0xF;
+        if (type == Protocol.SESSION || type == Protocol.RESUME || type == Protocol.WATCH) {
+            need(Protocol.TOKEN_BYTES);
+            token = 0;
+            for (int i = 0; i < Protocol.TOKEN_BYTES; i++) {
+                token = (token << 8) | (frame[position++] & 0xFF);
+            }
+        }
+        else if (type == Protocol.SNAPSHOT) {
+            need(1);
+            data = frame[position++] & 0xFF;
+            need(data);
+            snapshotStart = position;
+            position += data;
+        }
+        else if (Protocol.hasData(type)) {
+            need(1);
+            data = frame[position++] & 0xFF;
+        }
+        return type;
+    }
+
+    /**
+     * Makes sure the frame still holds the bytes an event says it has
+     */
+    private void need(int bytes) throws ProtocolException {
+        if (position + bytes > length) {
+            position = length;
+            throw new ProtocolException("Event runs past the end of its frame");
+        }
+    }
+
+    /**
+     * Reads the next event and makes sure it's the one expected
+     *
+     * @param type The event type expected
+     * @throws IOException If the stream fails or a different event arrives
+     */
+    public void expect(int type) throws IOException {
+        int actual = next();
+        if (actual != type) {
+            throw new ProtocolException("Expected event " + type + " but got " + actual);
+        }
+    }
+
+    /**
+     * Takes the next complete frame out of a buffer that's ready to be read
+     *
+     * @param buffer The buffer holding received bytes
+     * @return Returns true if a whole frame was taken, false if more bytes are needed
+     */
+    public boolean fill(ByteBuffer buffer) {
+        if (!buffer.hasRemaining()) {
+            return false;
+        }
+        int frameLength = buffer.get(buffer.position()) & 0xFF;
+        if (buffer.remaining() < 1 + frameLength) {
+            return false;
+        }
+        buffer.get();
+        buffer.get(frame, 0, frameLength);
+        length = frameLength;
+        position = 0;
+        return true;
+    }
+
+    /**
+     * @return Returns the last event's argument, such as the game status, version or the column of a move
+     */
+    public int arg() {
+        return arg;
+    }
+
+    /**
+     * @return Returns the player number of the last hello event
+     */
+    public int player() {
+        return data;
+    }
+
+    /**
+     * @return Returns the rules sent in the last rules event
+     * @throws ProtocolException If the rules can't be played
+     */
+    public Rules rules() throws ProtocolException {
+        try {
+            Rules rules = new Rules(data >>> 4, data & 0xF, arg);
+            return rules.isStandard() ? Rules.STANDARD : rules;
+        }
+        catch (IllegalArgumentException ex) {
+            throw new ProtocolException(ex.getMessage());
+        }
+    }
+
+    /**
+     * @return Returns the token of the last session or resume event, or the session number of the last watch event
+     */
+    public long token() {
+        return token;
+    }
+
+    /**
+     * @return Returns how many moves the last snapshot holds
+     */
+    public int snapshotMoves() {
+        return data;
+    }
+
+    /**
+     * Gets one move of the last snapshot. It's only there until the next frame is read.
+     *
+     * @param i The move, where 0 is the first move of the game
+     * @return Returns the row of the move
+     */
+    public int snapshotRow(int i) {
+        return (frame[snapshotStart + i] & 0xFF) >>> 4;
+    }
+
+    /**
+     * Gets one move of the last snapshot. It's only there until the next frame is read.
+     *
+     * @param i The move, where 0 is the first move of the game
+     * @return Returns the column of the move
+     */
+    public int snapshotColumn(int i) {
+        return frame[snapshotStart + i] & 0xF;
+    }
+
+    /**
+     * @return Returns the row of the last move
+     */
+    public int row() {
+        return data >>> 4;
+    }
+
+    /**
+     * @return Returns the column of the last move
+     */
+    public int column() {
+        return data & 0xF;
+    }
+}
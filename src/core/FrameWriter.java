@@ -0,0 +1,226 @@
+package core;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * This class builds a frame of Protocol events. Events are collected in a
+ * reused byte array and only sent when the frame is flushed, so everything a
+ * player needs to hear about a turn goes out in a single write.
+ *
+ * @author Kelly Ellis
+ * @version 1.0
+ */
+public class FrameWriter {
+
+    private final OutputStream out;
+    private final byte[] frame = new byte[1 + Protocol.MAX_FRAME];
+    private int length;
+
+    /**
+     * Creates a writer that flushes frames to a stream
+     *
+     * @param out The stream to write to
+     */
+    public FrameWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Creates a writer that is only flushed into buffers with flushTo
+     */
+    public FrameWriter() {
+        this(null);
+    }
+
+    /**
+     * Tells a client which player they are
+     *
+     * @param player The player number, 1 or 2, or 0 for a spectator
+     * @return Returns this writer
+     */
+    public FrameWriter hello(int player) {
+        return event(Protocol.HELLO, Protocol.VERSION, player);
+    }
+
+    /**
+     * Tells a client the size of the board and how many in a row win
+     *
+     * @param rules The rules the game is played by
+     * @return Returns this writer
+     */
+    public FrameWriter rules(Rules rules) {
+        return event(Protocol.RULES, rules.getConnect(), (rules.getWidth() << 4) | rules.getHeight());
+    }
+
+    /**
+     * Tells a client the token it can resume the game with
+     *
+     * @param token The player's resume token
+     * @return Returns this writer
+     */
+    public FrameWriter session(long token) {
+        return tokenEvent(Protocol.SESSION, token);
+    }
+
+    /**
+     * Asks the server to pair this client for a new game
+     *
+     * @return Returns this writer
+     */
+    public FrameWriter join() {
+        return event(Protocol.JOIN, 0);
+    }
+
+    /**
+     * Asks the server to go back to a game after the connection was lost
+     *
+     * @param token The token the server sent when the game started
+     * @return Returns this writer
+     */
+    public FrameWriter resume(long token) {
+        return tokenEvent(Protocol.RESUME, token);
+    }
+
+    /**
+     * Asks the server to let this client watch a game
+     *
+     * @param sessionNo The number of the session to watch, or 0 for the newest one
+     * @return Returns this writer
+     */
+    public FrameWriter watch(long sessionNo) {
+        return tokenEvent(Protocol.WATCH, sessionNo);
+    }
+
+    /**
+     * Sends every move played so far, so a client that resumes can rebuild its board
+     *
+     * @param player The player to move, 1 or 2
+     * @param board The game's board
+     * @return Returns this writer
+     */
+    public FrameWriter snapshot(int player, SessionBoard board) {
+        int moves = board.moveCount();
+        ensureRoom(2 + moves);
+        frame[1 + length++] = (byte) ((Protocol.SNAPSHOT << 4) | player);
+        frame[1 + length++] = (byte) moves;
+        for (int i = 0; i < moves; i++) {
+            frame[1 + length++] = board.packedMove(i);
+        }
+        return this;
+    }
+
+    /**
+     * Tells player 1 the game has started
+     *
+     * @return Returns this writer
+     */
+    public FrameWriter start() {
+        return event(Protocol.START, 0);
+    }
+
+    /**
+     * Sends the game status
+     *
+     * @param status The game status from Protocol
+     * @return Returns this writer
+     */
+    public FrameWriter status(int status) {
+        return event(Protocol.STATUS, status);
+    }
+
+    /**
+     * Sends the game status together with the other player's move
+     *
+     * @param status The game status from Protocol
+     * @param row The row of the other player's move
+     * @param column The column of the other player's move
+     * @return Returns this writer
+     */
+    public FrameWriter statusMove(int status, int row, int column) {
+        return event(Protocol.STATUS_MOVE, status, Protocol.packMove(row, column));
+    }
+
+    /**
+     * Sends a player's move to the server
+     *
+     * @param column The column the player drops their piece in
+     * @return Returns this writer
+     */
+    public FrameWriter move(int column) {
+        return event(Protocol.MOVE, column);
+    }
+
+    /**
+     * Writes the frame to the stream in one write and starts a new frame
+     *
+     * @throws IOException If the stream can't be written
+     */
+    public void flush() throws IOException {
+        if (length == 0) {
+            return;
+        }
+        frame[0] = (byte) length;
+        out.write(frame, 0, 1 + length);
+        out.flush();
+        length = 0;
+    }
+
+    /**
+     * Copies the frame into a buffer and starts a new frame
+     *
+     * @param buffer The buffer to put the frame in
+     */
+    public void flushTo(ByteBuffer buffer) {
+        if (length == 0) {
+            return;
+        }
+        frame[0] = (byte) length;
+        buffer.put(frame, 0, 1 + length);
+        length = 0;
+    }
+
+    /**
+     * @return Returns the number of bytes flushTo would put in a buffer, or 0 if
+     * no events were collected since the last flush
+     */
+    public int size() {
+        return length == 0 ? 0 : 1 + length;
+    }
+
+    /**
+     * Throws away the events collected since the last flush
+     */
+    public void clear() {
+        length = 0;
+    }
+
+    private FrameWriter event(int type, int arg) {
+        ensureRoom(1);
+        frame[1 + length++] = (byte) ((type << 4) | arg);
+        return this;
+    }
+
+    private FrameWriter event(int type, int arg, int data) {
+        ensureRoom(2);
+        frame[1 + length++] = (byte) ((type << 4) | arg);
+        frame[1 + length++] = (byte) data;
+        return this;
+    }
+
+    private FrameWriter tokenEvent(int type, long token) {
+        ensureRoom(1 + Protocol.TOKEN_BYTES);
+        frame[1 + length++] = (byte) (type << 4);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            frame[1 + length++] = (byte) (token >>> shift);
+        }
+        return this;
+    }
+
+    private void ensureRoom(int bytes) {
+        if (length + bytes > Protocol.MAX_FRAME) {
+            throw new IllegalStateException("Frame is full, flush it first");
+        }
+    }
+}
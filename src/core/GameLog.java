@@ -0,0 +1,296 @@
+package core;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class keeps every finished game in an append-only file. Sessions
+ * hand their GameRecord to append(), which only puts it on a queue, and one
+ * writer thread encodes whatever has queued up, writes it in one go and
+ * syncs the file once for the whole batch. The busier the server is, the
+ * more games share each sync.
+ *
+ * The file starts with MAGIC and VERSION as 2 ints. Each game is then:
+ * move count (1 byte), result (1 byte), start time (8 bytes), player 1's id
+ * length (1 byte) and UTF-8 bytes, player 2's id the same way, and the
+ * columns 2 to a byte, the first move in the high 4 bits. Use GameLogReader
+ * to read it back.
+ *
+ * A log opened with a PositionIndex also adds each batch to the index once
+ * it's synced, using where each game starts in the file as its id.
+ *
+ * @author Kelly Ellis
+ * @version 1.0
+ */
+public class GameLog implements Closeable {
+
+    public static final int MAGIC = 0x43344C47;
+    public static final int VERSION = 1;
+    public static final int HEADER_BYTES = 8;
+
+    // Longest an id can be once encoded
+    public static final int MAX_ID_BYTES = 255;
+    // Longest a record can be: counts, time, both ids and a full board of the biggest variant
+    public static final int MAX_RECORD_BYTES = 2 + 8 + 2 * (1 + MAX_ID_BYTES) +
+            (Rules.MAX_SIZE * Rules.MAX_SIZE + 1) / 2;
+
+    // Games waiting to be written. If the disk falls this far behind, games are dropped.
+    private static final int QUEUE_CAPACITY = 1 << 16;
+
+    private final FileChannel channel;
+    private final PositionIndex index;
+    // where each game of the batch starts in the file, only kept when there's an index
+    private final long[] offsets;
+    // set if a batch couldn't be indexed, the index is rebuilt the next time it's opened
+    private boolean indexFailed;
+    private final BlockingQueue<GameRecord> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final List<GameRecord> batch = new ArrayList<>();
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+    private final LongAdder written = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final Thread writer;
+    private volatile boolean closed;
+    // where the last whole batch ends, a batch that fails part way is cut off here
+    private long end;
+
+    private GameLog(FileChannel channel, long end, PositionIndex index) {
+        this.channel = channel;
+        this.index = index;
+        this.end = end;
+        this.offsets = index == null ? null : new long[QUEUE_CAPACITY + 1];
+        writer = new Thread(this::writeLoop, "connect4-game-log");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Opens a game log to add games to, creating it if it doesn't exist. If
+     * the last game in the file was only partly written, it's cut off.
+     *
+     * @param path The log file
+     * @return Returns the open log
+     * @throws IOException If the file can't be opened or isn't a game log
+     */
+    public static GameLog open(Path path) throws IOException {
+        return open(path, null);
+    }
+
+    /**
+     * Opens a game log that also adds every game written to a position index.
+     * The index should already be caught up with the log with PositionIndex.update,
+     * and it's closed with the log.
+     *
+     * @param path The log file
+     * @param index The index to add games to, or null for none
+     * @return Returns the open log
+     * @throws IOException If the file can't be opened or isn't a game log
+     */
+    public static GameLog open(Path path, PositionIndex index) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long end;
+        try {
+            if (channel.size() == 0) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).putInt(MAGIC).putInt(VERSION);
+                header.flip();
+                while (header.hasRemaining()) {
+                    channel.write(header);
+                }
+            }
+            else {
+                try (GameLogReader reader = new GameLogReader(path)) {
+                    while (reader.next()) {
+                        // skip to the end of the last whole game
+                    }
+                    end = reader.offset();
+                }
+                channel.truncate(end);
+            }
+            end = channel.size();
+            channel.position(end);
+        }
+        catch (IOException ex) {
+            channel.close();
+            throw ex;
+        }
+        return new GameLog(channel, end, index);
+    }
+
+    /**
+     * Adds a game to the log. This doesn't wait for the disk.
+     *
+     * @param record The finished game
+     * @return Returns false if the game was dropped because the log is closed or too far behind
+     */
+    public boolean append(GameRecord record) {
+        if (closed || !queue.offer(record)) {
+            dropped.increment();
+            return false;
+        }
+        // the log may have closed after the check, and the writer may be gone
+        if (closed && queue.remove(record)) {
+            dropped.increment();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return Returns how many games have been written and synced to disk
+     */
+    public long getWritten() {
+        return written.sum();
+    }
+
+    /**
+     * @return Returns how many games were dropped instead of written
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * Writes the games still queued and closes the file
+     *
+     * @throws IOException If the file can't be closed
+     */
+    public void close() throws IOException {
+        closed = true;
+        try {
+            writer.join();
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            channel.close();
+        }
+        finally {
+            if (index != null) {
+                index.close();
+            }
+        }
+    }
+
+    private void writeLoop() {
+        while (!closed || !queue.isEmpty()) {
+            try {
+                GameRecord first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                if (channel.position() != end) {
+                    // the last failed batch couldn't be cut off then
+                    cutOff();
+                }
+                batch.add(first);
+                queue.drainTo(batch);
+                for (int i = 0; i < batch.size(); i++) {
+                    if (buffer.remaining() < MAX_RECORD_BYTES) {
+                        writeBuffer();
+                    }
+                    if (offsets != null) {
+                        offsets[i] = channel.position() + buffer.position();
+                    }
+                    encode(batch.get(i), buffer);
+                }
+                writeBuffer();
+                // one sync for the whole batch
+                channel.force(false);
+                end = channel.position();
+                written.add(batch.size());
+                if (index != null && !indexFailed) {
+                    indexBatch();
+                }
+            }
+            catch (IOException ex) {
+                dropped.add(batch.size());
+                ex.printStackTrace();
+                try {
+                    cutOff();
+                }
+                catch (IOException cutOffFailed) {
+                    // tried again before the next batch
+                }
+            }
+            catch (InterruptedException ex) {
+                return;
+            }
+            finally {
+                batch.clear();
+                buffer.clear();
+            }
+        }
+    }
+
+    /**
+     * Adds the batch just written to the index. If it fails, the index stops
+     * being updated. It's left marked as changing, so it's rebuilt from the
+     * log the next time it's opened.
+     */
+    private void indexBatch() {
+        try {
+            for (int i = 0; i < batch.size(); i++) {
+                index.add(offsets[i], batch.get(i));
+            }
+            index.markIndexed(channel.position());
+        }
+        catch (IOException ex) {
+            indexFailed = true;
+            ex.printStackTrace();
+        }
+    }
+
+    /**
+     * Cuts off whatever was written of a batch that failed, so the games
+     * after it aren't lost behind a partly written one when the log is next
+     * opened
+     */
+    private void cutOff() throws IOException {
+        channel.truncate(end);
+        channel.position(end);
+    }
+
+    private void writeBuffer() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Writes one game in the log's format
+     */
+    static void encode(GameRecord record, ByteBuffer out) {
+        int moves = record.getMoveCount();
+        out.put((byte) moves);
+        out.put((byte) record.getResult());
+        out.putLong(record.getStartTime());
+        putId(record.getPlayer1(), out);
+        putId(record.getPlayer2(), out);
+        for (int i = 0; i < moves; i += 2) {
+            int high = record.getColumn(i);
+            int low = i + 1 < moves ? record.getColumn(i + 1) : 0;
+            out.put((byte) (high << 4 | low));
+        }
+    }
+
+    private static void putId(String id, ByteBuffer out) {
+        byte[] bytes = id.getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(bytes.length, MAX_ID_BYTES);
+        out.put((byte) length);
+        out.put(bytes, 0, length);
+    }
+}
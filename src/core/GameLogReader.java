@@ -0,0 +1,206 @@
+package core;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * This class reads the games in a GameLog one after another. It reads the
+ * file in large blocks and decodes each game in place, so moving to the next
+ * game doesn't create any objects. The ids are only turned into Strings when
+ * they're asked for, and record() makes a GameRecord when one is needed.
+ *
+ * Usage: GameLogReader [file] prints how the games in a log ended.
+ *
+ * @author Kelly Ellis
+ * @version 1.0
+ */
+public class GameLogReader implements Closeable {
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+    private boolean endOfFile;
+    // bytes of whole games read so far, including the header
+    private long offset;
+
+    private int moves;
+    private int result;
+    private long startTime;
+    private final byte[] player1 = new byte[GameLog.MAX_ID_BYTES];
+    private final byte[] player2 = new byte[GameLog.MAX_ID_BYTES];
+    private int player1Length;
+    private int player2Length;
+    private final byte[] packed = new byte[GameLog.MAX_RECORD_BYTES];
+
+    /**
+     * Opens a game log to read
+     *
+     * @param path The log file
+     * @throws IOException If the file can't be read or isn't a game log
+     */
+    public GameLogReader(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        buffer.flip();
+        fill();
+        if (buffer.remaining() < GameLog.HEADER_BYTES || buffer.getInt() != GameLog.MAGIC
+                || buffer.getInt() != GameLog.VERSION) {
+            channel.close();
+            throw new IOException(path + " isn't a game log");
+        }
+        offset = GameLog.HEADER_BYTES;
+    }
+
+    /**
+     * Moves to the next game
+     *
+     * @return Returns false when there are no more whole games
+     * @throws IOException If the file can't be read
+     */
+    public boolean next() throws IOException {
+        if (buffer.remaining() < GameLog.MAX_RECORD_BYTES) {
+            fill();
+        }
+        int start = buffer.position();
+        // the last game might only be partly written, so check each length before reading
+        if (buffer.remaining() < 11) {
+            return false;
+        }
+        moves = buffer.get() & 0xFF;
+        result = buffer.get();
+        startTime = buffer.getLong();
+        player1Length = buffer.get() & 0xFF;
+        if (buffer.remaining() < player1Length + 1) {
+            return rewind(start);
+        }
+        buffer.get(player1, 0, player1Length);
+        player2Length = buffer.get() & 0xFF;
+        int packedLength = (moves + 1) / 2;
+        if (buffer.remaining() < player2Length + packedLength) {
+            return rewind(start);
+        }
+        buffer.get(player2, 0, player2Length);
+        buffer.get(packed, 0, packedLength);
+        offset += buffer.position() - start;
+        return true;
+    }
+
+    /**
+     * Moves to a game that starts at an offset in the file, such as one
+     * returned by offset() or a game id from a PositionIndex. The next call to
+     * next() reads that game.
+     *
+     * @param offset Where the game starts, counting the header
+     * @throws IOException If the file can't be read
+     */
+    public void seek(long offset) throws IOException {
+        channel.position(offset);
+        endOfFile = false;
+        buffer.clear().flip();
+        fill();
+        this.offset = offset;
+    }
+
+    private boolean rewind(int start) {
+        buffer.position(start);
+        return false;
+    }
+
+    /**
+     * Moves what's left in the buffer to the front and reads more of the file after it
+     */
+    private void fill() throws IOException {
+        buffer.compact();
+        while (!endOfFile && buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                endOfFile = true;
+            }
+        }
+        buffer.flip();
+    }
+
+    /**
+     * @return Returns how many bytes of whole games have been read, counting the header
+     */
+    public long offset() {
+        return offset;
+    }
+
+    public String getPlayer1() {
+        return new String(player1, 0, player1Length, StandardCharsets.UTF_8);
+    }
+
+    public String getPlayer2() {
+        return new String(player2, 0, player2Length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return Returns when the game started, in milliseconds since 1970
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public int getMoveCount() {
+        return moves;
+    }
+
+    /**
+     * @param move Which move, starting at 0
+     * @return Returns the column that move was played in, 0 to 6
+     */
+    public int getColumn(int move) {
+        int pair = packed[move >> 1];
+        return (move & 1) == 0 ? (pair >> 4) & 0xF : pair & 0xF;
+    }
+
+    /**
+     * @return Returns Protocol.PLAYER1_WON, Protocol.PLAYER2_WON, Protocol.DRAW or GameRecord.ABANDONED
+     */
+    public int getResult() {
+        return result;
+    }
+
+    /**
+     * @return Returns the current game as a GameRecord
+     */
+    public GameRecord record() {
+        byte[] columns = new byte[moves];
+        for (int i = 0; i < moves; i++) {
+            columns[i] = (byte) getColumn(i);
+        }
+        return new GameRecord(getPlayer1(), getPlayer2(), startTime, columns, result);
+    }
+
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path path = Paths.get(args.length > 0 ? args[0] : "connect4.games");
+        long start = System.nanoTime();
+        long games = 0;
+        long totalMoves = 0;
+        long[] results = new long[Protocol.CONTINUE];
+        try (GameLogReader reader = new GameLogReader(path)) {
+            while (reader.next()) {
+                games++;
+                totalMoves += reader.getMoveCount();
+                int result = reader.getResult();
+                if (result >= 0 && result < results.length) {
+                    results[result]++;
+                }
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d games, player 1 won %d, player 2 won %d, ties %d, abandoned %d%n", games,
+                results[Protocol.PLAYER1_WON], results[Protocol.PLAYER2_WON], results[Protocol.DRAW],
+                results[GameRecord.ABANDONED]);
+        System.out.printf("%.1f moves a game, read in %.2f s (%.0f games/s)%n",
+                games == 0 ? 0 : (double) totalMoves / games, seconds, games / seconds);
+    }
+}
@@ -0,0 +1,75 @@
+package core;
+
+/**
+ * This class is one finished game on the Connect4 Server as it's kept in
+ * the GameLog: who played, when it started, the columns played in order and
+ * how it ended.
+ *
+ * @author Kelly Ellis
+ * @version 1.0
+ */
+public class GameRecord {
+
+    /** Result for a game that ended because a player left */
+    public static final int ABANDONED = 0;
+
+    private final String player1;
+    private final String player2;
+    private final long startTime;
+    private final byte[] columns;
+    private final int result;
+
+    /**
+     * Creates a game record
+     *
+     * @param player1 The id of player 1
+     * @param player2 The id of player 2
+     * @param startTime When the game started, in milliseconds since 1970
+     * @param columns The column of each move in order, 0 to 6
+     * @param result Protocol.PLAYER1_WON, Protocol.PLAYER2_WON, Protocol.DRAW or ABANDONED
+     */
+    public GameRecord(String player1, String player2, long startTime, byte[] columns, int result) {
+        this.player1 = player1;
+        this.player2 = player2;
+        this.startTime = startTime;
+        this.columns = columns;
+        this.result = result;
+    }
+
+    public String getPlayer1() {
+        return player1;
+    }
+
+    public String getPlayer2() {
+        return player2;
+    }
+
+    /**
+     * @return Returns when the game started, in milliseconds since 1970
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * @return Returns how many moves were played
+     */
+    public int getMoveCount() {
+        return columns.length;
+    }
+
+    /**
+     * @param move Which move, starting at 0
+     * @return Returns the column that move was played in, 0 to 6
+     */
+    public int getColumn(int move) {
+        return columns[move];
+    }
+
+    /**
+     * @return Returns Protocol.PLAYER1_WON, Protocol.PLAYER2_WON, Protocol.DRAW or ABANDONED
+     */
+    public int getResult() {
+        return result;
+    }
+}
@@ -0,0 +1,204 @@
+package core;
+
+/**
+ * This class holds the state of a single Connect4 game. It only has primitive
+ * fields, so dropping a piece, undoing it and copying a game never allocate,
+ * and every game owns its own board. A GameState isn't shared between threads,
+ * so independent games can be played on as many threads as needed without locks.
+ *
+ * The winner is worked out as each piece is dropped by only checking the lines
+ * through that piece, and the move count makes checking for a full board free.
+ *
+ * @author Kelly Ellis
+ * @version 1.0
+ */
+public final class GameState {
+
+    // Each player's pieces as a bitboard, see BitBoard for the layout
+    private long xStones;
+    private long oStones;
+    private int moves;
+    private char winner = ' ';
+
+    /**
+     * Creates an empty game board
+     */
+    public GameState() {
+    }
+
+    /**
+     * Creates a copy of another game
+     *
+     * @param other The game to copy
+     */
+    public GameState(GameState other) {
+        copyFrom(other);
+    }
+
+    /**
+     * Empties the board so a new game can be played
+     */
+    public void reset() {
+        xStones = 0;
+        oStones = 0;
+        moves = 0;
+        winner = ' ';
+    }
+
+    /**
+     * Overwrites this game with the board of another game
+     *
+     * @param other The game to copy
+     */
+    public void copyFrom(GameState other) {
+        xStones = other.xStones;
+        oStones = other.oStones;
+        moves = other.moves;
+        winner = other.winner;
+    }
+
+    /**
+     * Checks if a piece can be dropped into a column
+     *
+     * @param column The column, from 0 to 6
+     * @return Returns true if the column has an empty spot
+     */
+    public boolean canPlay(int column) {
+        return BitBoard.canPlay(xStones | oStones, column);
+    }
+
+    /**
+     * Drops a game piece into the top-most empty spot of a column
+     *
+     * @param player The player's game piece, either X or O
+     * @param column The column, from 0 to 6
+     * @return Returns true if the piece was dropped, false if the column is full
+     */
+    public boolean drop(char player, int column) {
+        long move = BitBoard.dropMask(xStones | oStones, column);
+        if (move == 0) {
+            return false;
+        }
+        if (player == 'X') {
+            xStones |= move;
+        }
+        else {
+            oStones |= move;
+        }
+        moves++;
+        if (winner == ' ' && BitBoard.winsThrough(stones(player), move)) {
+            winner = player;
+        }
+        return true;
+    }
+
+    /**
+     * Takes the top-most game piece back out of a column. A game ends on its
+     * first win, so taking a piece back always clears the winner.
+     *
+     * @param column The column, from 0 to 6
+     * @return Returns true if a piece was removed, false if the column is empty
+     */
+    public boolean undo(int column) {
+        long taken = (xStones | oStones) & BitBoard.columnMask(column);
+        if (taken == 0) {
+            return false;
+        }
+        long top = Long.highestOneBit(taken);
+        xStones &= ~top;
+        oStones &= ~top;
+        moves--;
+        winner = ' ';
+        return true;
+    }
+
+    /**
+     * Gets the game piece at a spot on the board
+     *
+     * @param row The row, where 0 is the top row
+     * @param column The column, from 0 to 6
+     * @return Returns X or O if the spot is taken, or a space if it's empty
+     */
+    public char pieceAt(int row, int column) {
+        long cell = BitBoard.cellMask(row, column);
+        if ((xStones & cell) != 0) {
+            return 'X';
+        }
+        if ((oStones & cell) != 0) {
+            return 'O';
+        }
+        return ' ';
+    }
+
+    /**
+     * Checks if a player has 4 in a row
+     *
+     * @param player The player's game piece, either X or O
+     * @return Returns true if that player has won
+     */
+    public boolean isWin(char player) {
+        return winner == player;
+    }
+
+    /**
+     * Checks if either player has 4 in a row
+     *
+     * @return Returns true if there is a winner
+     */
+    public boolean hasWinner() {
+        return winner != ' ';
+    }
+
+    /**
+     * @return Returns the player who got 4 in a row first, or a space if nobody has
+     */
+    public char getWinner() {
+        return winner;
+    }
+
+    /**
+     * Checks if every spot on the board is taken
+     *
+     * @return Returns true if the board is full
+     */
+    public boolean isFull() {
+        return moves == BitBoard.WIDTH * BitBoard.HEIGHT;
+    }
+
+    /**
+     * @param player The player's game piece, either X or O
+     * @return Returns the bitboard of that player's pieces
+     */
+    public long stones(char player) {
+        return player == 'X' ? xStones : oStones;
+    }
+
+    /**
+     * @return Returns the bitboard of every occupied spot
+     */
+    public long mask() {
+        return xStones | oStones;
+    }
+
+    /**
+     * @return Returns how many pieces have been dropped
+     */
+    public int moveCount() {
+        return moves;
+    }
+
+    /**
+     * Makes a key for this position that is the same for its mirror image.
+     * Adding the bottom row to X's pieces and the mask sets one bit just above
+     * each column's pieces, so every position has its own key, and no column
+     * carries into the next, so mirroring the key mirrors the position.
+     * Unlike Connect4.getCanonicalHash, no two positions share a key, so use
+     * this one for the standard game. The hash also covers variant boards.
+     *
+     * @return Returns the smaller of the position's key and its mirror's key, never 0
+     */
+    public long canonicalKey() {
+        long key = xStones + (xStones | oStones) + BitBoard.BOTTOM_MASK;
+        return Math.min(key, BitBoard.mirror(key));
+    }
+}
@@ -0,0 +1,115 @@
+package core;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class records how long things take and works out percentiles. Times
+ * are kept in microseconds in buckets that get wider as the times get longer,
+ * 8 buckets for every power of 2, so any percentile is within about 12% of
+ * the real value. Recording is lock-free and never allocates, so many threads
+ * can record into the same histogram.
+ *
+ * @author Kelly Ellis
+ * @version 1.0
+ */
+public class LatencyHistogram {
+
+    // Times under 16 microseconds get a bucket each
+    private static final int LINEAR = 16;
+    private static final int SUB_BUCKETS = 8;
+    private static final int BUCKETS = LINEAR + (64 - 4) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder total = new LongAdder();
+    private final LongAdder sumMicros = new LongAdder();
+
+    /**
+     * Records one time
+     *
+     * @param nanos The time in nanoseconds
+     */
+    public void record(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+        counts.incrementAndGet(bucketFor(micros));
+        total.increment();
+        sumMicros.add(micros);
+    }
+
+    /**
+     * @return Returns how many times were recorded
+     */
+    public long count() {
+        return total.sum();
+    }
+
+    /**
+     * @return Returns the mean time in microseconds
+     */
+    public double meanMicros() {
+        long count = total.sum();
+        return count == 0 ? 0 : (double) sumMicros.sum() / count;
+    }
+
+    /**
+     * Works out a percentile of the recorded times
+     *
+     * @param percentile The percentile, from 0 to 100
+     * @return Returns the time in microseconds that the given share of times were at or under
+     */
+    public long percentileMicros(double percentile) {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += counts.get(i);
+        }
+        if (count == 0) {
+            return 0;
+        }
+        long target = (long) Math.ceil(count * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= Math.max(1, target)) {
+                return upperBound(i);
+            }
+        }
+        return upperBound(BUCKETS - 1);
+    }
+
+    /**
+     * Empties the histogram
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        total.reset();
+        sumMicros.reset();
+    }
+
+    /**
+     * @return Returns the p50, p99 and max in a short line of text
+     */
+    public String summary() {
+        return String.format("n=%d mean=%.0fus p50=%dus p99=%dus max=%dus", count(), meanMicros(),
+                percentileMicros(50), percentileMicros(99), percentileMicros(100));
+    }
+
+    private static int bucketFor(long micros) {
+        if (micros < LINEAR) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int sub = (int) (micros >>> (exponent - 3)) & (SUB_BUCKETS - 1);
+        return LINEAR + (exponent - 4) * SUB_BUCKETS + sub;
+    }
+
+    private static long upperBound(int bucket) {
+        if (bucket < LINEAR) {
+            return bucket;
+        }
+        int exponent = (bucket - LINEAR) / SUB_BUCKETS + 4;
+        int sub = (bucket - LINEAR) % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + sub + 1) << (exponent - 3)) - 1;
+    }
+}
@@ -0,0 +1,423 @@
+package core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * This class is the lobby for the Connect4 Server. Players who connect wait
+ * here until another player close to their rating is waiting too, then both
+ * are handed to the server to start a session.
+ *
+ * A new player is paired straight away if the nearest rating is within
+ * BASE_WINDOW of theirs. Otherwise the window grows the longer they wait, and
+ * a player who waits longer than the timeout is let go. Waiting players are
+ * kept sorted by rating, so finding a partner for a new player is O(log n).
+ *
+ * Everything happens on one lobby thread. The accept thread only puts new
+ * players on a queue, so it never waits for matching. A player only joins the
+ * lobby once their JOIN event arrives, and a player who sends RESUME instead
+ * is handed back to the server to go back to their game, as is a spectator
+ * who sends WATCH. The lobby also
+ * watches every waiting connection, and a player who hangs up is removed
+ * right away instead of being paired with someone.
+ *
+ * @author Kelly Ellis
+ * @version 1.0
+ */
+public class Matchmaker implements Runnable {
+
+    // Ratings this close are always a match
+    public static final int BASE_WINDOW = 100;
+    // How much the window grows for each second a player waits
+    public static final int WIDEN_PER_SECOND = 50;
+
+    // How long a player can wait before they're let go, can be changed with -Dconnect4.matchTimeout (seconds)
+    private static final long TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(Integer.getInteger("connect4.matchTimeout", 120));
+    private static final long SWEEP_MILLIS = 250;
+    // The longest first frame a player can send: length, resume or watch event and token
+    private static final int GREETING_BYTES = 2 + Protocol.TOKEN_BYTES;
+
+    private final BiConsumer<SocketChannel, SocketChannel> onMatch;
+    private final BiConsumer<SocketChannel, Long> onResume;
+    private final BiConsumer<SocketChannel, Long> onWatch;
+    private final Consumer<String> log;
+    private final Selector selector;
+
+    // Players that have connected but haven't reached the lobby thread yet
+    private final Queue<Waiter> arrivals = new ConcurrentLinkedQueue<>();
+    // Waiting players sorted by rating, then by when they arrived
+    private final TreeMap<Long, Waiter> byRating = new TreeMap<>();
+    // Waiting players in the order they arrived, to find the ones that time out
+    private final ArrayDeque<Waiter> byArrival = new ArrayDeque<>();
+    // Pairs found since the last hand-off, player 1 then player 2
+    private final List<Waiter> matched = new ArrayList<>();
+    // Players who asked to resume since the last hand-off
+    private final List<Waiter> resumed = new ArrayList<>();
+    // Spectators who asked to watch since the last hand-off
+    private final List<Waiter> watching = new ArrayList<>();
+    private final ByteBuffer probe = ByteBuffer.allocate(1);
+    private final FrameReader greeting = new FrameReader();
+    private int nextArrival;
+    private volatile int waiting;
+
+    /**
+     * Creates the lobby. It doesn't pair anyone until start() is called.
+     *
+     * @param onMatch Called on the lobby thread with player 1 and player 2 of each new pair.
+     *                The channels are non-blocking and no longer watched by the lobby.
+     * @param onResume Called on the lobby thread with each player who asked to resume and
+     *                 the token they sent. The channel is non-blocking and no longer watched.
+     * @param onWatch Called on the lobby thread with each spectator and the session they asked
+     *                to watch. The channel is non-blocking and no longer watched.
+     * @param log Where to send the lobby's messages
+     * @throws IOException If a selector can't be opened
+     */
+    public Matchmaker(BiConsumer<SocketChannel, SocketChannel> onMatch, BiConsumer<SocketChannel, Long> onResume,
+            BiConsumer<SocketChannel, Long> onWatch, Consumer<String> log) throws IOException {
+        this.onMatch = onMatch;
+        this.onResume = onResume;
+        this.onWatch = onWatch;
+        this.log = log;
+        this.selector = Selector.open();
+    }
+
+    /**
+     * Starts the lobby thread
+     */
+    public void start() {
+        Thread thread = new Thread(this, "connect4-lobby");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Puts a player in the lobby. This can be called from any thread and doesn't wait.
+     *
+     * @param channel The player's connection
+     * @param rating The player's rating
+     * @throws IOException If the connection can't be switched to non-blocking mode
+     */
+    public void add(SocketChannel channel, int rating) throws IOException {
+        channel.configureBlocking(false);
+        arrivals.add(new Waiter(channel, Math.max(0, rating), System.nanoTime()));
+        selector.wakeup();
+    }
+
+    /**
+     * @return Returns how many players were waiting the last time the lobby looked
+     */
+    public int getWaiting() {
+        return waiting;
+    }
+
+    public void run() {
+        long nextSweep = System.nanoTime();
+        while (true) {
+            try {
+                selector.select(SWEEP_MILLIS);
+                long now = System.nanoTime();
+                readPlayers(now);
+
+                Waiter arrival;
+                while ((arrival = arrivals.poll()) != null) {
+                    arrive(arrival);
+                }
+                if (now >= nextSweep) {
+                    expire(now);
+                    sweep(now);
+                    nextSweep = now + TimeUnit.MILLISECONDS.toNanos(SWEEP_MILLIS);
+                }
+                handOff();
+                waiting = byRating.size();
+            }
+            catch (IOException ex) {
+                log.accept("Lobby failed: " + ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Starts watching a new connection for its first frame. It counts towards
+     * the timeout from now, so a player who never says anything is let go too.
+     */
+    private void arrive(Waiter waiter) {
+        try {
+            waiter.key = waiter.channel.register(selector, SelectionKey.OP_READ, waiter);
+        }
+        catch (IOException ex) {
+            closeQuietly(waiter.channel);
+            return;
+        }
+        byArrival.add(waiter);
+    }
+
+    /**
+     * Reads the first frame of new connections. Waiting players don't send
+     * anything else until they're paired, so after that a readable connection
+     * means the player hung up.
+     */
+    private void readPlayers(long now) {
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+            SelectionKey key = keys.next();
+            keys.remove();
+            Waiter waiter = (Waiter) key.attachment();
+            if (waiter.done) {
+                continue;
+            }
+            try {
+                if (waiter.firstFrame != null) {
+                    if (readGreeting(waiter, now)) {
+                        continue;
+                    }
+                }
+                else {
+                    probe.clear();
+                    if (waiter.channel.read(probe) == 0) {
+                        continue;
+                    }
+                }
+            }
+            catch (IOException ex) {
+                // reset by the player or not speaking the protocol, drop them below
+            }
+            drop(waiter);
+        }
+    }
+
+    /**
+     * Reads as much of a player's first frame as has arrived, then lets them
+     * join the lobby, sends them back to their game or lets them watch one
+     *
+     * @return Returns false if the player should be dropped
+     */
+    private boolean readGreeting(Waiter waiter, long now) throws IOException {
+        if (waiter.channel.read(waiter.firstFrame) < 0) {
+            return false;
+        }
+        waiter.firstFrame.flip();
+        boolean whole = greeting.fill(waiter.firstFrame);
+        waiter.firstFrame.compact();
+        if (!whole) {
+            // a greeting that fills the buffer and still isn't a frame isn't a greeting
+            return waiter.firstFrame.hasRemaining();
+        }
+        int type = greeting.next();
+        waiter.firstFrame = null;
+        if (type == Protocol.JOIN) {
+            admit(waiter, now);
+            return true;
+        }
+        if (type == Protocol.RESUME) {
+            remove(waiter);
+            waiter.token = greeting.token();
+            resumed.add(waiter);
+            return true;
+        }
+        if (type == Protocol.WATCH) {
+            remove(waiter);
+            waiter.token = greeting.token();
+            watching.add(waiter);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Pairs a new player with the closest waiting rating, or adds them to the lobby
+     */
+    private void admit(Waiter waiter, long now) {
+        waiter.sortKey = (long) waiter.rating << 32 | (nextArrival++ & 0xFFFFFFFFL);
+
+        Map.Entry<Long, Waiter> below = byRating.floorEntry(waiter.sortKey);
+        Map.Entry<Long, Waiter> above = byRating.ceilingEntry(waiter.sortKey);
+        Waiter best = null;
+        if (below != null && fits(below.getValue(), waiter, now)) {
+            best = below.getValue();
+        }
+        if (above != null && fits(above.getValue(), waiter, now)
+                && (best == null || above.getValue().rating - waiter.rating < waiter.rating - best.rating)) {
+            best = above.getValue();
+        }
+
+        if (best != null) {
+            remove(best);
+            remove(waiter);
+            pair(best, waiter);
+            return;
+        }
+        byRating.put(waiter.sortKey, waiter);
+    }
+
+    /**
+     * Lets go of the players who have waited too long. Everyone has the same
+     * timeout, so they time out in the order they arrived.
+     */
+    private void expire(long now) {
+        Waiter waiter;
+        while ((waiter = byArrival.peek()) != null) {
+            if (!waiter.done && now - waiter.since < TIMEOUT_NANOS) {
+                break;
+            }
+            byArrival.poll();
+            if (!waiter.done) {
+                log.accept("No match found for a player in time");
+                drop(waiter);
+            }
+        }
+    }
+
+    /**
+     * Windows grow as players wait, so pairs that didn't fit before might
+     * now. Walks the lobby in rating order and pairs neighbours that fit.
+     */
+    private void sweep(long now) {
+        Map.Entry<Long, Waiter> entry = byRating.firstEntry();
+        while (entry != null) {
+            Map.Entry<Long, Waiter> next = byRating.higherEntry(entry.getKey());
+            if (next == null) {
+                return;
+            }
+            if (fits(entry.getValue(), next.getValue(), now)) {
+                remove(entry.getValue());
+                remove(next.getValue());
+                Waiter first = entry.getValue();
+                Waiter second = next.getValue();
+                // whoever waited longer moves first
+                if (first.since <= second.since) {
+                    pair(first, second);
+                }
+                else {
+                    pair(second, first);
+                }
+                entry = byRating.higherEntry(next.getKey());
+            }
+            else {
+                entry = next;
+            }
+        }
+    }
+
+    /**
+     * Two players fit if their ratings are within the wider of their windows
+     */
+    private static boolean fits(Waiter a, Waiter b, long now) {
+        return Math.abs(a.rating - b.rating) <= Math.max(a.window(now), b.window(now));
+    }
+
+    private void pair(Waiter player1, Waiter player2) {
+        matched.add(player1);
+        matched.add(player2);
+    }
+
+    /**
+     * Gives the new pairs, the players who asked to resume and the spectators to the server.
+     * A channel can't go back to blocking mode until the selector has let go
+     * of it, so the cancelled keys are cleared out first.
+     */
+    private void handOff() throws IOException {
+        if (matched.isEmpty() && resumed.isEmpty() && watching.isEmpty()) {
+            return;
+        }
+        selector.selectNow();
+        for (Waiter waiter : resumed) {
+            try {
+                onResume.accept(waiter.channel, waiter.token);
+            }
+            catch (RuntimeException ex) {
+                log.accept("Couldn't resume a session: " + ex.getMessage());
+                closeQuietly(waiter.channel);
+            }
+        }
+        resumed.clear();
+        for (Waiter waiter : watching) {
+            try {
+                onWatch.accept(waiter.channel, waiter.token);
+            }
+            catch (RuntimeException ex) {
+                log.accept("Couldn't add a spectator: " + ex.getMessage());
+                closeQuietly(waiter.channel);
+            }
+        }
+        watching.clear();
+        for (int i = 0; i < matched.size(); i += 2) {
+            SocketChannel player1 = matched.get(i).channel;
+            SocketChannel player2 = matched.get(i + 1).channel;
+            try {
+                onMatch.accept(player1, player2);
+            }
+            catch (RuntimeException ex) {
+                log.accept("Couldn't start a session: " + ex.getMessage());
+                closeQuietly(player1);
+                closeQuietly(player2);
+            }
+        }
+        matched.clear();
+    }
+
+    /**
+     * Takes a player out of the lobby without closing their connection
+     */
+    private void remove(Waiter waiter) {
+        byRating.remove(waiter.sortKey, waiter);
+        waiter.done = true;
+        waiter.key.cancel();
+    }
+
+    private void drop(Waiter waiter) {
+        remove(waiter);
+        closeQuietly(waiter.channel);
+    }
+
+    private static void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        }
+        catch (IOException ex) {
+            // already closed
+        }
+    }
+
+    /**
+     * A player waiting in the lobby
+     */
+    private static class Waiter {
+        private final SocketChannel channel;
+        private final int rating;
+        private final long since;
+        private long sortKey;
+        private SelectionKey key;
+        private boolean done;
+        // the first frame as it arrives, null once it has been read
+        private ByteBuffer firstFrame = ByteBuffer.allocate(GREETING_BYTES);
+        // the resume token, or the session a spectator asked to watch
+        private long token;
+
+        Waiter(SocketChannel channel, int rating, long since) {
+            this.channel = channel;
+            this.rating = rating;
+            this.since = since;
+        }
+
+        /**
+         * @return Returns how far from this player's rating a partner can be after waiting until now
+         */
+        long window(long now) {
+            return BASE_WINDOW + WIDEN_PER_SECOND * TimeUnit.NANOSECONDS.toSeconds(now - since);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package core;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * This class serves the server's metrics as plain text over HTTP, so they
+ * can be read with curl or collected by a monitoring system. It only listens
+ * on the local machine, and the metrics are only read when someone asks for
+ * them, so it costs nothing while no one is watching.
+ *
+ * @author Kelly Ellis
+ * @version 1.0
+ */
+public class MetricsEndpoint {
+
+    /** Port the metrics are served on unless told otherwise, can be changed with -Dconnect4.metricsPort */
+    public static final int DEFAULT_PORT = 8006;
+
+    private final HttpServer server;
+
+    /**
+     * Starts serving the metrics at http://localhost:port/metrics
+     *
+     * @param metrics The metrics to serve
+     * @param port The port to listen on
+     * @throws IOException If the port can't be opened
+     */
+    public MetricsEndpoint(ServerMetrics metrics, int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/metrics", exchange -> respond(exchange, metrics.toText()));
+        // the HTTP server's own dispatcher thread handles the few requests there are
+        server.setExecutor(null);
+        server.start();
+    }
+
+    /**
+     * Starts the endpoint on the port from -Dconnect4.metricsPort, unless it's 0
+     *
+     * @param metrics The metrics to serve
+     * @return Returns the endpoint, or null if it's turned off
+     * @throws IOException If the port can't be opened
+     */
+    public static MetricsEndpoint startConfigured(ServerMetrics metrics) throws IOException {
+        int port = Integer.getInteger("connect4.metricsPort", DEFAULT_PORT);
+        return port > 0 ? new MetricsEndpoint(metrics, port) : null;
+    }
+
+    /**
+     * @return Returns the port the metrics are served on
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stops serving the metrics
+     */
+    public void stop() {
+        server.stop(0);
+    }
+
+    private static void respond(HttpExchange exchange, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * This class is the computer player's opening book: the best column for every
+ * position in the first few plies of the game, worked out ahead of time by
+ * OpeningBookGenerator. The book file is memory-mapped, so loading it is
+ * instant and the operating system shares its pages between processes.
+ *
+ * The file is a 16 byte header (magic, version, plies and the log2 of the
+ * number of slots) followed by a hash table of 8 byte slots. Each slot holds a
+ * position key shifted left by 4 bits with the best column plus 1 in the low
+ * bits, and empty slots are 0. Positions are found by hashing the key and
+ * probing the next slots until an empty one, and never more than the whole
+ * table, so a full or damaged book can't stall a move.
+ *
+ * @author Kelly Ellis
+ * @version 1.0
+ */
+public final class OpeningBook {
+
+    static final int MAGIC = 0x4334424B; // "C4BK"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 16;
+    // The table is mapped as one buffer and read with int offsets
+    static final int MAX_SLOT_BITS = 27;
+
+    private final ByteBuffer slots;
+    private final int plies;
+    private final int slotBits;
+    private final int slotMask;
+
+    private OpeningBook(ByteBuffer buffer) throws IOException {
+        if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Not a Connect4 opening book");
+        }
+        plies = buffer.getInt(8);
+        slotBits = buffer.getInt(12);
+        if (slotBits < 1 || slotBits > MAX_SLOT_BITS) {
+            throw new IOException("Opening book has a bad slot count: 2^" + slotBits);
+        }
+        slotMask = (1 << slotBits) - 1;
+        long size = HEADER_BYTES + ((long) 8 << slotBits);
+        if (buffer.capacity() != size) {
+            throw new IOException("Opening book should be " + size + " bytes for 2^" + slotBits + " slots, but is "
+                    + buffer.capacity());
+        }
+        slots = buffer;
+    }
+
+    /**
+     * Memory-maps a book file
+     *
+     * @param file The book made by OpeningBookGenerator
+     * @return Returns the book
+     * @throws IOException If the file can't be read or isn't a book
+     */
+    public static OpeningBook load(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new OpeningBook(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * @return Returns how many plies from the start of the game the book covers
+     */
+    public int getPlies() {
+        return plies;
+    }
+
+    /**
+     * Looks up the best column for the player to move
+     *
+     * @param state The game
+     * @param player The player whose turn it is, either X or O
+     * @return Returns the column from 0 to 6, or -1 if the position isn't in the book
+     */
+    public int lookup(GameState state, char player) {
+        if (state.moveCount() > plies) {
+            return -1;
+        }
+        long key = state.stones(player) + state.mask();
+        int slot = slotFor(key, slotBits);
+        for (int probes = 0; probes <= slotMask; probes++) {
+            long entry = slots.getLong(HEADER_BYTES + (slot << 3));
+            if (entry == 0) {
+                return -1;
+            }
+            if (entry >>> 4 == key) {
+                return (int) (entry & 0xF) - 1;
+            }
+            slot = (slot + 1) & slotMask;
+        }
+        return -1;
+    }
+
+    /**
+     * Works out the first slot to try for a position key
+     */
+    static int slotFor(long key, int slotBits) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> (64 - slotBits));
+    }
+}
@@ -0,0 +1,127 @@
+package core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This is the offline tool that builds the computer player's opening book.
+ * It visits every position that can be reached in the first few plies of the
+ * game, searches each one, and writes the best columns to a book file.
+ *
+ * Usage: OpeningBookGenerator [file] [plies] [milliseconds per position]
+ *
+ * @author Kelly Ellis
+ * @version 1.0
+ */
+public class OpeningBookGenerator {
+
+    // 2^20 transposition table entries, 16 MB
+    private static final int TABLE_BITS = 20;
+
+    private final int plies;
+    private final long budgetNanos;
+    private final Connect4Search search = new Connect4Search(TABLE_BITS);
+    private final Map<Long, Integer> book = new HashMap<>();
+
+    /**
+     * Creates a generator
+     *
+     * @param plies How many plies from the start of the game to cover
+     * @param millis How long to search each position
+     */
+    public OpeningBookGenerator(int plies, long millis) {
+        this.plies = plies;
+        this.budgetNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    /**
+     * Searches every position up to the book's depth
+     *
+     * @return Returns the number of positions in the book
+     */
+    public int generate() {
+        visit(new GameState(), 'X');
+        return book.size();
+    }
+
+    /**
+     * Visits a position and every position after it that's still in range
+     */
+    private void visit(GameState state, char player) {
+        long key = state.stones(player) + state.mask();
+        if (book.containsKey(key) || state.hasWinner() || state.isFull()) {
+            return;
+        }
+        int column = search.bestMove(state, player, budgetNanos);
+        book.put(key, column);
+        if (book.size() % 1000 == 0) {
+            System.out.println(book.size() + " positions searched");
+        }
+        if (state.moveCount() == plies) {
+            return;
+        }
+        char next = player == 'X' ? 'O' : 'X';
+        for (int c = 0; c < BitBoard.WIDTH; c++) {
+            if (state.drop(player, c)) {
+                visit(state, next);
+                state.undo(c);
+            }
+        }
+    }
+
+    /**
+     * Writes the book to a file in the format OpeningBook reads
+     *
+     * @param file Where to write the book
+     * @throws IOException If the file can't be written
+     */
+    public void write(Path file) throws IOException {
+        // keep the table at most half full so lookups stay short
+        int slotBits = 1;
+        while ((1 << slotBits) < book.size() * 2) {
+            slotBits++;
+        }
+        int slotMask = (1 << slotBits) - 1;
+
+        ByteBuffer buffer = ByteBuffer.allocate(OpeningBook.HEADER_BYTES + (8 << slotBits))
+                .order(ByteOrder.BIG_ENDIAN);
+        buffer.putInt(OpeningBook.MAGIC).putInt(OpeningBook.VERSION).putInt(plies).putInt(slotBits);
+        for (Map.Entry<Long, Integer> entry : book.entrySet()) {
+            long key = entry.getKey();
+            int slot = OpeningBook.slotFor(key, slotBits);
+            while (buffer.getLong(OpeningBook.HEADER_BYTES + (slot << 3)) != 0) {
+                slot = (slot + 1) & slotMask;
+            }
+            buffer.putLong(OpeningBook.HEADER_BYTES + (slot << 3), (key << 4) | (entry.getValue() + 1));
+        }
+
+        buffer.clear();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path file = Paths.get(args.length > 0 ? args[0] : "connect4.book");
+        int plies = args.length > 1 ? Integer.parseInt(args[1]) : 6;
+        long millis = args.length > 2 ? Long.parseLong(args[2]) : 20;
+
+        OpeningBookGenerator generator = new OpeningBookGenerator(plies, millis);
+        long start = System.nanoTime();
+        int positions = generator.generate();
+        generator.write(file);
+        System.out.printf("Wrote %d positions to %s in %.1f s%n", positions, file,
+                (System.nanoTime() - start) / 1e9);
+    }
+}
@@ -0,0 +1,92 @@
+package core;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.channels.SocketChannel;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This class keeps an Elo rating for each player on the Connect4 Server so
+ * the Matchmaker can pair players of about the same strength. Players don't
+ * log in, so a player is known by their IP address. Ratings are only kept
+ * while the server is running.
+ *
+ * @author Kelly Ellis
+ * @version 1.0
+ */
+public class PlayerRatings {
+
+    public static final int START_RATING = 1500;
+
+    // How far one game can move a rating
+    private static final int K_FACTOR = 32;
+
+    private final Map<String, Integer> ratings = new HashMap<>();
+
+    /**
+     * Gets a player's rating
+     *
+     * @param player The player's id
+     * @return Returns the player's rating, or START_RATING if they haven't played yet
+     */
+    public synchronized int rating(String player) {
+        return ratings.getOrDefault(player, START_RATING);
+    }
+
+    /**
+     * Updates both players' ratings after a game
+     *
+     * @param player1 The id of player 1
+     * @param player2 The id of player 2
+     * @param score1 Player 1's score - 1 for a win, 0.5 for a tie, 0 for a loss
+     */
+    public synchronized void recordGame(String player1, String player2, double score1) {
+        int rating1 = rating(player1);
+        int rating2 = rating(player2);
+        double expected1 = 1 / (1 + Math.pow(10, (rating2 - rating1) / 400.0));
+        int change = (int) Math.round(K_FACTOR * (score1 - expected1));
+        ratings.put(player1, Math.max(0, rating1 + change));
+        ratings.put(player2, Math.max(0, rating2 - change));
+    }
+
+    /**
+     * Updates both players' ratings with how a game on the server ended.
+     * Abandoned games don't count.
+     *
+     * @param player1 The id of player 1
+     * @param player2 The id of player 2
+     * @param result Protocol.PLAYER1_WON, Protocol.PLAYER2_WON, Protocol.DRAW or GameRecord.ABANDONED
+     */
+    public void recordResult(String player1, String player2, int result) {
+        if (result == Protocol.PLAYER1_WON) {
+            recordGame(player1, player2, 1);
+        }
+        else if (result == Protocol.PLAYER2_WON) {
+            recordGame(player1, player2, 0);
+        }
+        else if (result == Protocol.DRAW) {
+            recordGame(player1, player2, 0.5);
+        }
+    }
+
+    /**
+     * Gets the id of the player on the other end of a connection
+     *
+     * @param channel The player's connection
+     * @return Returns the player's IP address, or "unknown" if the connection is closed
+     */
+    public static String idOf(SocketChannel channel) {
+        try {
+            SocketAddress address = channel.getRemoteAddress();
+            if (address instanceof InetSocketAddress) {
+                return ((InetSocketAddress) address).getAddress().getHostAddress();
+            }
+        }
+        catch (IOException ex) {
+            // closed, fall through
+        }
+        return "unknown";
+    }
+}
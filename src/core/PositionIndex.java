@@ -0,0 +1,582 @@
+package core;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * This class is an on-disk index of every position reached in a GameLog, so
+ * finding the games that passed through a position and how they ended is a
+ * lookup instead of replaying every game. It's kept up to date as games
+ * finish when the GameLog is opened with it, and update() catches it up with
+ * games logged while it wasn't open.
+ *
+ * Positions are keyed by GameState.canonicalKey, so a position and its mirror
+ * image share one entry. Every position after the first move is indexed. A
+ * game's id is where it starts in the log file, and GameLogReader.seek reads
+ * it back.
+ *
+ * The log doesn't record the rules its games were played by, and every game
+ * is replayed as a standard 7x6 game, so only index logs of standard games.
+ * Games that can't be played on a 7x6 board are skipped, but a variant game
+ * that happens to fit would be counted. Connect4HeadlessServer doesn't open
+ * an index when it's playing a variant.
+ *
+ * The index is two files. The table file is a 32 byte header (magic, version,
+ * the log2 of the number of slots, whether games are part way through being
+ * added, the number of positions and how far into the log has been indexed)
+ * followed by 32 byte slots. A slot
+ * holds the position key, the offset of the newest game through it in the
+ * games file, then how many of those games were abandoned, won by player 1,
+ * won by player 2 and tied, as ints in GameRecord result order. Empty slots
+ * are 0. The table is memory-mapped, so counting games is a few memory reads,
+ * and it doubles in size when it's 3/4 full.
+ *
+ * The games file has the same name plus ".games": an 8 byte header (magic and
+ * version) followed by 16 byte entries, each a game id and the offset of the
+ * entry for the previous game through the same position, or 0 for none.
+ *
+ * The slots change as each game is added, but how far the log has been
+ * indexed only moves once a batch is done, so a crash part way through a
+ * batch would count its games twice when they're added again. Before a batch
+ * changes anything, the header is marked as changing and forced to disk, and
+ * the mark is only taken off in markIndexed once everything else is on disk.
+ * An index that's still marked when it's opened is emptied, and update()
+ * builds it again from the log.
+ *
+ * Only one thread may use an index at a time. To rebuild an index, delete
+ * both files and update it from the log.
+ *
+ * Usage: PositionIndex [index] [log] [moves] catches the index up with the
+ * log, then prints the games through the position after the moves, given as
+ * columns 1 to 7 such as 4453.
+ *
+ * @author Kelly Ellis
+ * @version 1.0
+ */
+public final class PositionIndex implements Closeable {
+
+    private static final int MAGIC = 0x43345049; // "C4PI"
+    private static final int GAMES_MAGIC = 0x43345047; // "C4PG"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 32;
+    private static final int GAMES_HEADER_BYTES = 8;
+    private static final int SLOT_BYTES = 32;
+    private static final int ENTRY_BYTES = 16;
+    private static final int INITIAL_SLOT_BITS = 16;
+    // The table is mapped as one buffer, so it has to stay under 2 GB
+    private static final int MAX_SLOT_BITS = 25;
+    // How many games update() adds between each markIndexed
+    private static final int CATCH_UP_BATCH = 10000;
+
+    // Where things are in the header and in a slot
+    private static final int CHANGING_AT = 12;
+    private static final int POSITIONS_AT = 16;
+    private static final int INDEXED_TO_AT = 24;
+    private static final int NEWEST_AT = 8;
+    private static final int COUNTS_AT = 16;
+
+    private final Path file;
+    private final FileChannel games;
+    private FileChannel channel;
+    private MappedByteBuffer slots;
+    private int slotBits;
+    private int slotMask;
+    private long positions;
+    // set while games are being added that markIndexed hasn't covered yet
+    private boolean changing;
+    private boolean wasReset;
+
+    // entries not written to the games file yet, which start at pendingStart in it
+    private final ByteBuffer pending = ByteBuffer.allocateDirect(64 * 1024);
+    private long pendingStart;
+    private final ByteBuffer entry = ByteBuffer.allocate(ENTRY_BYTES);
+
+    // reused for every game added
+    private final GameState state = new GameState();
+    private final byte[] columns = new byte[BitBoard.WIDTH * BitBoard.HEIGHT];
+    private final long[] keys = new long[BitBoard.WIDTH * BitBoard.HEIGHT];
+
+    private PositionIndex(Path file, FileChannel channel, FileChannel games) throws IOException {
+        this.file = file;
+        this.channel = channel;
+        this.games = games;
+        map();
+        pendingStart = games.size();
+        if (changing) {
+            reset();
+        }
+    }
+
+    /**
+     * Opens an index, making a new empty one if it doesn't exist yet
+     *
+     * @param file The table file. The games file is kept next to it.
+     * @return Returns the index
+     * @throws IOException If the files can't be opened or aren't a position index
+     */
+    public static PositionIndex open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        FileChannel games = null;
+        try {
+            if (channel.size() == 0) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES)
+                        .putInt(MAGIC).putInt(VERSION).putInt(INITIAL_SLOT_BITS);
+                // the rest of the header is 0, and mapping the slots makes the file big enough for them
+                header.clear();
+                writeFully(channel, header, 0);
+            }
+            games = FileChannel.open(gamesFile(file), StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            if (games.size() == 0) {
+                ByteBuffer header = ByteBuffer.allocate(GAMES_HEADER_BYTES).putInt(GAMES_MAGIC).putInt(VERSION);
+                header.flip();
+                writeFully(games, header, 0);
+            }
+            ByteBuffer header = ByteBuffer.allocate(GAMES_HEADER_BYTES);
+            games.read(header, 0);
+            if (header.getInt(0) != GAMES_MAGIC || header.getInt(4) != VERSION) {
+                throw new IOException("Not a Connect4 position index");
+            }
+            return new PositionIndex(file, channel, games);
+        }
+        catch (IOException ex) {
+            channel.close();
+            if (games != null) {
+                games.close();
+            }
+            throw ex;
+        }
+    }
+
+    private static Path gamesFile(Path file) {
+        return file.resolveSibling(file.getFileName() + ".games");
+    }
+
+    /**
+     * Maps the table file and reads its header
+     */
+    private void map() throws IOException {
+        MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+        if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+            throw new IOException("Not a Connect4 position index");
+        }
+        slotBits = header.getInt(8);
+        if (slotBits < 1 || slotBits > MAX_SLOT_BITS) {
+            throw new IOException("Position index has a bad header");
+        }
+        slotMask = (1 << slotBits) - 1;
+        slots = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + ((long) SLOT_BYTES << slotBits));
+        positions = slots.getLong(POSITIONS_AT);
+        changing = slots.getInt(CHANGING_AT) != 0;
+    }
+
+    /**
+     * Empties an index that was left part way through adding games, since
+     * there's no telling which of its counts were already bumped
+     */
+    private void reset() throws IOException {
+        for (int at = HEADER_BYTES; at < slots.capacity(); at += 8) {
+            slots.putLong(at, 0);
+        }
+        positions = 0;
+        slots.putLong(POSITIONS_AT, 0).putLong(INDEXED_TO_AT, 0);
+        games.truncate(GAMES_HEADER_BYTES);
+        games.force(false);
+        pendingStart = GAMES_HEADER_BYTES;
+        pending.clear();
+        slots.force();
+        setChanging(false);
+        wasReset = true;
+    }
+
+    /**
+     * Marks the header as changing or not and forces it to disk
+     */
+    private void setChanging(boolean changing) {
+        this.changing = changing;
+        slots.putInt(CHANGING_AT, changing ? 1 : 0);
+        slots.force(0, HEADER_BYTES);
+    }
+
+    /**
+     * Indexes a finished game
+     *
+     * @param gameId Where the game starts in the log
+     * @param record The game
+     * @return Returns false if the game isn't a standard 7x6 game and wasn't indexed
+     * @throws IOException If the games file can't be written
+     */
+    public boolean add(long gameId, GameRecord record) throws IOException {
+        int moves = record.getMoveCount();
+        if (moves > columns.length) {
+            return false;
+        }
+        for (int i = 0; i < moves; i++) {
+            columns[i] = (byte) record.getColumn(i);
+        }
+        return add(gameId, moves, record.getResult());
+    }
+
+    /**
+     * Indexes the game in columns. The whole game is replayed before
+     * anything is written, so a game that can't be played isn't half indexed.
+     */
+    private boolean add(long gameId, int moves, int result) throws IOException {
+        if (result < GameRecord.ABANDONED || result > Protocol.DRAW) {
+            return false;
+        }
+        state.reset();
+        for (int i = 0; i < moves; i++) {
+            int column = columns[i];
+            if (column >= BitBoard.WIDTH || !state.drop(i % 2 == 0 ? 'X' : 'O', column)) {
+                return false;
+            }
+            keys[i] = state.canonicalKey();
+        }
+        if (!changing) {
+            setChanging(true);
+        }
+        for (int i = 0; i < moves; i++) {
+            addGame(keys[i], gameId, result);
+        }
+        return true;
+    }
+
+    /**
+     * Adds one game to one position's counts and the front of its list of games
+     */
+    private void addGame(long key, long gameId, int result) throws IOException {
+        if ((positions + 1) * 4 > 3L << slotBits) {
+            grow();
+        }
+        int at = slotAt(key);
+        if (slots.getLong(at) == 0) {
+            slots.putLong(at, key);
+            positions++;
+            slots.putLong(POSITIONS_AT, positions);
+        }
+        long newest = append(gameId, slots.getLong(at + NEWEST_AT));
+        slots.putLong(at + NEWEST_AT, newest);
+        int count = at + COUNTS_AT + 4 * result;
+        slots.putInt(count, slots.getInt(count) + 1);
+    }
+
+    /**
+     * Adds an entry to the games file
+     *
+     * @return Returns the entry's offset in the file
+     */
+    private long append(long gameId, long previous) throws IOException {
+        if (pending.remaining() < ENTRY_BYTES) {
+            writePending();
+        }
+        long offset = pendingStart + pending.position();
+        pending.putLong(gameId).putLong(previous);
+        return offset;
+    }
+
+    private void writePending() throws IOException {
+        pending.flip();
+        int length = pending.remaining();
+        writeFully(games, pending, pendingStart);
+        pendingStart += length;
+        pending.clear();
+    }
+
+    /**
+     * Doubles the table. The bigger table is built in a new file that then
+     * replaces the old one, so a crash part way leaves the old table whole.
+     */
+    private void grow() throws IOException {
+        if (slotBits == MAX_SLOT_BITS) {
+            throw new IOException("Position index is full");
+        }
+        Path grown = file.resolveSibling(file.getFileName() + ".tmp");
+        FileChannel bigger = FileChannel.open(grown, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            int bits = slotBits + 1;
+            MappedByteBuffer copy = bigger.map(FileChannel.MapMode.READ_WRITE, 0,
+                    HEADER_BYTES + ((long) SLOT_BYTES << bits));
+            copy.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, bits).putInt(CHANGING_AT, changing ? 1 : 0)
+                    .putLong(POSITIONS_AT, positions).putLong(INDEXED_TO_AT, getIndexedTo());
+            int mask = (1 << bits) - 1;
+            for (int slot = 0; slot <= slotMask; slot++) {
+                int from = HEADER_BYTES + slot * SLOT_BYTES;
+                long key = slots.getLong(from);
+                if (key == 0) {
+                    continue;
+                }
+                int to = slotFor(key, bits);
+                while (copy.getLong(HEADER_BYTES + to * SLOT_BYTES) != 0) {
+                    to = (to + 1) & mask;
+                }
+                for (int i = 0; i < SLOT_BYTES; i += 8) {
+                    copy.putLong(HEADER_BYTES + to * SLOT_BYTES + i, slots.getLong(from + i));
+                }
+            }
+            // the games the new table points to have to be on disk before it is
+            writePending();
+            games.force(false);
+            copy.force();
+        }
+        catch (IOException ex) {
+            bigger.close();
+            throw ex;
+        }
+        Files.move(grown, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel.close();
+        channel = bigger;
+        map();
+    }
+
+    /**
+     * @return Returns where a key's slot is, or the empty slot it would go in
+     */
+    private int slotAt(long key) {
+        int slot = slotFor(key, slotBits);
+        while (true) {
+            int at = HEADER_BYTES + slot * SLOT_BYTES;
+            long stored = slots.getLong(at);
+            if (stored == 0 || stored == key) {
+                return at;
+            }
+            slot = (slot + 1) & slotMask;
+        }
+    }
+
+    private static int slotFor(long key, int slotBits) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> (64 - slotBits));
+    }
+
+    /**
+     * Counts the games through a position that ended a certain way
+     *
+     * @param key The position's GameState.canonicalKey
+     * @param result Protocol.PLAYER1_WON, Protocol.PLAYER2_WON, Protocol.DRAW or GameRecord.ABANDONED
+     * @return Returns how many of the games through the position ended that way
+     */
+    public int count(long key, int result) {
+        int at = slotAt(key);
+        return slots.getLong(at) == 0 ? 0 : slots.getInt(at + COUNTS_AT + 4 * result);
+    }
+
+    /**
+     * @param key The position's GameState.canonicalKey
+     * @return Returns how many games passed through the position
+     */
+    public int total(long key) {
+        int total = 0;
+        for (int result = GameRecord.ABANDONED; result <= Protocol.DRAW; result++) {
+            total += count(key, result);
+        }
+        return total;
+    }
+
+    /**
+     * Finds the games that passed through a position, newest first
+     *
+     * @param key The position's GameState.canonicalKey
+     * @param ids Filled in with the game ids, as many as fit
+     * @return Returns how many ids were filled in
+     * @throws IOException If the games file can't be read
+     */
+    public int gameIds(long key, long[] ids) throws IOException {
+        int at = slotAt(key);
+        long offset = slots.getLong(at) == 0 ? 0 : slots.getLong(at + NEWEST_AT);
+        int found = 0;
+        while (offset != 0 && found < ids.length) {
+            if (offset >= pendingStart) {
+                // not written out yet
+                int i = (int) (offset - pendingStart);
+                ids[found++] = pending.getLong(i);
+                offset = pending.getLong(i + 8);
+            }
+            else {
+                entry.clear();
+                while (entry.hasRemaining()) {
+                    if (games.read(entry, offset + entry.position()) < 0) {
+                        throw new IOException("Position index games file is truncated");
+                    }
+                }
+                ids[found++] = entry.getLong(0);
+                offset = entry.getLong(8);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @return Returns how many different positions are indexed
+     */
+    public long getPositions() {
+        return positions;
+    }
+
+    /**
+     * @return Returns true if the index was emptied when it was opened because
+     * it was left part way through adding games, so update() has to add the
+     * whole log again
+     */
+    public boolean wasReset() {
+        return wasReset;
+    }
+
+    /**
+     * @return Returns how far into the log the games have been indexed
+     */
+    public long getIndexedTo() {
+        return slots.getLong(INDEXED_TO_AT);
+    }
+
+    /**
+     * Remembers that every game before an offset in the log has been indexed.
+     * The games added so far and the slots are forced to disk first, and only
+     * then is the index marked as no longer changing, so a crash at any point
+     * leaves either the last marked index or one that's rebuilt when opened.
+     *
+     * @param logOffset Where the first game that isn't indexed yet starts in the log
+     * @throws IOException If the games file can't be written
+     */
+    public void markIndexed(long logOffset) throws IOException {
+        if (!changing && logOffset == getIndexedTo()) {
+            return;
+        }
+        writePending();
+        games.force(false);
+        slots.putLong(INDEXED_TO_AT, logOffset);
+        slots.force();
+        setChanging(false);
+    }
+
+    /**
+     * Indexes the games in a log that came after the ones already indexed
+     *
+     * @param log The game log
+     * @return Returns how many games were added
+     * @throws IOException If a file can't be read or written
+     */
+    public long update(Path log) throws IOException {
+        long added = 0;
+        try (GameLogReader reader = new GameLogReader(log)) {
+            if (getIndexedTo() > reader.offset()) {
+                reader.seek(getIndexedTo());
+            }
+            long gameId = reader.offset();
+            int batched = 0;
+            while (reader.next()) {
+                if (batched == CATCH_UP_BATCH) {
+                    // so a crash while catching up on a long log doesn't lose all of it
+                    markIndexed(gameId);
+                    batched = 0;
+                }
+                int moves = reader.getMoveCount();
+                if (moves <= columns.length) {
+                    for (int i = 0; i < moves; i++) {
+                        columns[i] = (byte) reader.getColumn(i);
+                    }
+                    if (add(gameId, moves, reader.getResult())) {
+                        added++;
+                        batched++;
+                    }
+                }
+                gameId = reader.offset();
+            }
+            markIndexed(gameId);
+        }
+        return added;
+    }
+
+    /**
+     * Writes the index's changes out to its files
+     *
+     * @throws IOException If the games file can't be written
+     */
+    public void flush() throws IOException {
+        writePending();
+        games.force(false);
+        slots.force();
+    }
+
+    /**
+     * Writes the index out and closes its files
+     *
+     * @throws IOException If a file can't be written or closed
+     */
+    public void close() throws IOException {
+        try {
+            flush();
+        }
+        finally {
+            channel.close();
+            games.close();
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path indexFile = Paths.get(args.length > 0 ? args[0] : "connect4.positions");
+        Path logFile = Paths.get(args.length > 1 ? args[1] : "connect4.games");
+        String moves = args.length > 2 ? args[2] : "";
+        if (moves.isEmpty()) {
+            System.out.println("Usage: PositionIndex [index] [log] [moves], such as 4453");
+            return;
+        }
+
+        GameState position = new GameState();
+        for (int i = 0; i < moves.length(); i++) {
+            int column = moves.charAt(i) - '1';
+            if (column < 0 || column >= BitBoard.WIDTH || !position.drop(i % 2 == 0 ? 'X' : 'O', column)) {
+                System.out.println("Can't play move " + (i + 1) + " of " + moves);
+                return;
+            }
+        }
+
+        try (PositionIndex index = PositionIndex.open(indexFile)) {
+            long start = System.nanoTime();
+            long added = index.update(logFile);
+            System.out.printf("Indexed %d new games in %.2f s, %d positions%n", added,
+                    (System.nanoTime() - start) / 1e9, index.getPositions());
+
+            long key = position.canonicalKey();
+            // time the lookup over many tries, it's too quick to time once
+            int lookups = 100000;
+            long sum = 0;
+            start = System.nanoTime();
+            for (int i = 0; i < lookups; i++) {
+                sum += index.total(key);
+            }
+            double micros = (System.nanoTime() - start) / 1e3 / lookups;
+            System.out.printf("%s: %d games (looked up in %.2f us), player 1 won %d, player 2 won %d, "
+                    + "ties %d, abandoned %d%n", moves, sum / lookups, micros, index.count(key, Protocol.PLAYER1_WON),
+                    index.count(key, Protocol.PLAYER2_WON), index.count(key, Protocol.DRAW),
+                    index.count(key, GameRecord.ABANDONED));
+
+            long[] ids = new long[10];
+            int found = index.gameIds(key, ids);
+            try (GameLogReader reader = new GameLogReader(logFile)) {
+                for (int i = 0; i < found; i++) {
+                    reader.seek(ids[i]);
+                    if (reader.next()) {
+                        System.out.printf("  game %d: %s vs %s, %d moves, result %d%n", ids[i],
+                                reader.getPlayer1(), reader.getPlayer2(), reader.getMoveCount(), reader.getResult());
+                    }
+                }
+            }
+        }
+    }
+}
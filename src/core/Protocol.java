@@ -0,0 +1,90 @@
+package core;
+
+/**
+ * This class describes the messages sent between the Connect4 Client and
+ * Server. Messages are sent in frames: one byte with the number of bytes that
+ * follow, then one or more events. Each event is a single byte with its type
+ * in the top 4 bits and a small argument in the bottom 4 bits, and some types
+ * have one more byte of data. A player's move is only the column, which fits
+ * in the argument, so a move is a 2 byte frame. The server drops the piece,
+ * checks the move is legal and tells both players the row it landed in.
+ *
+ * A client starts by sending JOIN to be paired for a new game, or RESUME
+ * with the token it was given to get back into a game after losing its
+ * connection. The server answers a resume with hello, rules, a new token and
+ * a snapshot of the game, all in one frame.
+ *
+ * A spectator sends WATCH instead, with the number of the session to watch.
+ * The server answers with hello for player 0, rules and a snapshot, then
+ * sends the spectator the same STATUS_MOVE events the players get, and
+ * ABANDONED if a player leaves before the game is over.
+ *
+ * @author Kelly Ellis
+ * @version 1.0
+ */
+public final class Protocol {
+
+    /** Sent in the hello event so both sides know they speak the same protocol */
+    public static final int VERSION = 5;
+
+    /** The most event bytes one frame can hold */
+    public static final int MAX_FRAME = 255;
+
+    /** Server to client: argument is the protocol version, data is the player number, 0 for a spectator */
+    public static final int HELLO = 1;
+    /** Server to player 1: both players joined and player 1 moves first */
+    public static final int START = 2;
+    /** Server to client: argument is the game status */
+    public static final int STATUS = 3;
+    /** Server to client: argument is the game status, data is the other player's move */
+    public static final int STATUS_MOVE = 4;
+    /** Client to server: argument is the column the player drops their piece in */
+    public static final int MOVE = 5;
+    /** Server to client, right after hello: argument is how many in a row win, data is the columns and rows */
+    public static final int RULES = 6;
+    /** Server to client, right after rules: data is the token to resume the game with, in TOKEN_BYTES bytes */
+    public static final int SESSION = 7;
+    /** Client to server, the first event on a connection: pair me for a new game */
+    public static final int JOIN = 8;
+    /** Client to server, the first event on a connection: data is the token of the game to go back to */
+    public static final int RESUME = 9;
+    /** Server to client: argument is the player to move, data is the move count then each move, oldest first */
+    public static final int SNAPSHOT = 10;
+    /** Client to server, the first event on a connection: data is the session to watch, 0 for the newest one */
+    public static final int WATCH = 11;
+
+    /** Length of a resume token, and of the session number in a watch event */
+    public static final int TOKEN_BYTES = 8;
+
+    // Game status codes
+    public static final int PLAYER1_WON = 1;
+    public static final int PLAYER2_WON = 2;
+    public static final int DRAW = 3;
+    public static final int CONTINUE = 4;
+    /** Only sent to the player who moved: the column is full or off the board, so move again */
+    public static final int ILLEGAL_MOVE = 5;
+    /** Only sent to spectators: a player left and the game is over without a winner */
+    public static final int ABANDONED = 6;
+
+    private Protocol() {
+    }
+
+    /**
+     * @param type The event type
+     * @return Returns true if the event has a data byte after it
+     */
+    static boolean hasData(int type) {
+        return type == HELLO || type == STATUS_MOVE || type == RULES;
+    }
+
+    /**
+     * Packs a move into one byte, the row in the top 4 bits and the column in the bottom 4
+     *
+     * @param row The row, from 0 to 14
+     * @param column The column, from 0 to 14
+     * @return Returns the packed move
+     */
+    static int packMove(int row, int column) {
+        return (row << 4) | column;
+    }
+}
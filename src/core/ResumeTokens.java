@@ -0,0 +1,73 @@
+package core;
+
+import java.security.SecureRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class keeps track of the games players can resume. Each player gets
+ * their own random token when a game starts, and a client that loses its
+ * connection sends the token back to get into the same game as the same
+ * player. Tokens are hard to guess, so nobody can take over someone else's
+ * seat.
+ *
+ * A token is only kept while its game is being played. Games end when
+ * someone wins, when a player doesn't come back within the resume timeout,
+ * or when the player to move does nothing for the idle timeout, so the
+ * number of tokens never grows past the number of games being played.
+ *
+ * @param <T> The server's type of session
+ * @author Kelly Ellis
+ * @version 1.0
+ */
+public class ResumeTokens<T> {
+
+    // How long a player has to come back after losing their connection, set with -Dconnect4.resumeTimeout (seconds)
+    public static final long RESUME_TIMEOUT_NANOS =
+            TimeUnit.SECONDS.toNanos(Integer.getInteger("connect4.resumeTimeout", 60));
+    // How long the player to move can do nothing before the game ends, set with -Dconnect4.idleTimeout (seconds)
+    public static final long IDLE_TIMEOUT_NANOS =
+            TimeUnit.SECONDS.toNanos(Integer.getInteger("connect4.idleTimeout", 300));
+
+    private final SecureRandom random = new SecureRandom();
+    private final ConcurrentHashMap<Long, T> sessions = new ConcurrentHashMap<>();
+
+    /**
+     * Makes a new token for a player of a session
+     *
+     * @param session The session the token leads back to
+     * @return Returns the token
+     */
+    public long issue(T session) {
+        while (true) {
+            long token = random.nextLong();
+            if (sessions.putIfAbsent(token, session) == null) {
+                return token;
+            }
+        }
+    }
+
+    /**
+     * @param token A token sent by a client
+     * @return Returns the session the token belongs to, or null if it's unknown or its game is over
+     */
+    public T find(long token) {
+        return sessions.get(token);
+    }
+
+    /**
+     * Forgets a token once its game is over
+     *
+     * @param token The token
+     */
+    public void retire(long token) {
+        sessions.remove(token);
+    }
+
+    /**
+     * @return Returns how many tokens can still be resumed
+     */
+    public int size() {
+        return sessions.size();
+    }
+}
@@ -0,0 +1,137 @@
+package core;
+
+/**
+ * This class describes a Connect4 variant: how many columns and rows the
+ * board has and how many pieces in a row win. The standard game is 7 columns,
+ * 6 rows and 4 in a row, and it's played on the BitBoard engine. Every other
+ * size is played on a VariantBoard.
+ *
+ * Moves are sent with the row and column in 4 bits each, so boards can be up
+ * to 15 by 15.
+ *
+ * @author Kelly Ellis
+ * @version 1.0
+ */
+public final class Rules {
+
+    /** Most columns or rows a board can have */
+    public static final int MAX_SIZE = 15;
+
+    /** The standard game, 7 columns by 6 rows and 4 in a row */
+    public static final Rules STANDARD = new Rules(BitBoard.WIDTH, BitBoard.HEIGHT, 4);
+
+    private final int width;
+    private final int height;
+    private final int connect;
+
+    /**
+     * Creates a variant
+     *
+     * @param width The number of columns, from 1 to 15
+     * @param height The number of rows, from 1 to 15
+     * @param connect How many pieces in a row win, at least 2 and no more than fit on the board
+     * @throws IllegalArgumentException If the board can't be played
+     */
+    public Rules(int width, int height, int connect) {
+        if (width < 1 || width > MAX_SIZE || height < 1 || height > MAX_SIZE) {
+            throw new IllegalArgumentException("Board must be from 1x1 to " + MAX_SIZE + "x" + MAX_SIZE);
+        }
+        if (connect < 2 || connect > Math.max(width, height)) {
+            throw new IllegalArgumentException("Can't get " + connect + " in a row on a " + width + "x" + height
+                    + " board");
+        }
+        this.width = width;
+        this.height = height;
+        this.connect = connect;
+    }
+
+    /**
+     * Reads a variant written as columns x rows x in-a-row, such as 9x7x5.
+     * If the last number is left off, 4 in a row wins.
+     *
+     * @param text The variant
+     * @return Returns the rules
+     * @throws IllegalArgumentException If the text isn't a variant that can be played
+     */
+    public static Rules parse(String text) {
+        String[] parts = text.trim().toLowerCase().split("x");
+        if (parts.length < 2 || parts.length > 3) {
+            throw new IllegalArgumentException("Expected columns x rows x in-a-row, such as 9x7x5: " + text);
+        }
+        try {
+            int width = Integer.parseInt(parts[0]);
+            int height = Integer.parseInt(parts[1]);
+            int connect = parts.length == 3 ? Integer.parseInt(parts[2]) : 4;
+            Rules rules = new Rules(width, height, connect);
+            return rules.isStandard() ? STANDARD : rules;
+        }
+        catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Expected columns x rows x in-a-row, such as 9x7x5: " + text);
+        }
+    }
+
+    /**
+     * @return Returns the rules given with -Dconnect4.rules, or the standard game if there aren't any
+     */
+    public static Rules configured() {
+        String text = System.getProperty("connect4.rules");
+        return text == null || text.isEmpty() ? STANDARD : parse(text);
+    }
+
+    /**
+     * @return Returns the number of columns
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return Returns the number of rows
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return Returns how many pieces in a row win
+     */
+    public int getConnect() {
+        return connect;
+    }
+
+    /**
+     * @return Returns the number of spots on the board
+     */
+    public int getCells() {
+        return width * height;
+    }
+
+    /**
+     * @return Returns true if this is the standard game, which is played on the BitBoard engine
+     */
+    public boolean isStandard() {
+        return width == BitBoard.WIDTH && height == BitBoard.HEIGHT && connect == 4;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof Rules)) {
+            return false;
+        }
+        Rules rules = (Rules) other;
+        return width == rules.width && height == rules.height && connect == rules.connect;
+    }
+
+    @Override
+    public int hashCode() {
+        return (width * 31 + height) * 31 + connect;
+    }
+
+    /**
+     * @return Returns the variant in the form parse() reads, such as 9x7x5
+     */
+    @Override
+    public String toString() {
+        return width + "x" + height + "x" + connect;
+    }
+}
@@ -0,0 +1,283 @@
+package core;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * This class keeps count of what the Connect4 Server is doing, such as
+ * how many games are being played and how many moves are made each second.
+ * Sessions update it from their own threads, so every counter is lock-free.
+ *
+ * It can be watched through JMX once register() is called, or read as text
+ * from toText(), which is what MetricsEndpoint serves.
+ *
+ * @author Kelly Ellis
+ * @version 1.0
+ */
+public class ServerMetrics implements ServerMetricsMBean {
+
+    /** Name the metrics are registered under in JMX */
+    public static final String OBJECT_NAME = "core:type=ServerMetrics";
+
+    private final AtomicInteger activeGames = new AtomicInteger();
+    private final LongAdder connectionsAccepted = new LongAdder();
+    private final LongAdder gamesStarted = new LongAdder();
+    private final LongAdder gamesRejected = new LongAdder();
+    private final LongAdder player1Wins = new LongAdder();
+    private final LongAdder player2Wins = new LongAdder();
+    private final LongAdder ties = new LongAdder();
+    private final LongAdder abandoned = new LongAdder();
+    private final LongAdder moves = new LongAdder();
+    private final LongAdder illegalMoves = new LongAdder();
+    private final LatencyHistogram moveLatency = new LatencyHistogram();
+    private final LatencyHistogram sessionDuration = new LatencyHistogram();
+
+    // last sample used to work out the move rate
+    private long lastSampleTime = System.nanoTime();
+    private long lastSampleMoves;
+
+    /**
+     * Registers these metrics with the platform MBean server so JMX tools like
+     * JConsole can read them
+     *
+     * @return Returns false if they couldn't be registered, such as when another server already is
+     */
+    public boolean register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+            return true;
+        }
+        catch (JMException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Called when a player connects to the server
+     */
+    public void connectionAccepted() {
+        connectionsAccepted.increment();
+    }
+
+    /**
+     * Called when a session starts playing
+     */
+    public void gameStarted() {
+        activeGames.incrementAndGet();
+        gamesStarted.increment();
+    }
+
+    /**
+     * Called when a session ends, whether the game finished or a player left
+     *
+     * @param result Protocol.PLAYER1_WON, Protocol.PLAYER2_WON, Protocol.DRAW or GameRecord.ABANDONED
+     * @param durationNanos How long the session lasted
+     */
+    public void gameEnded(int result, long durationNanos) {
+        activeGames.decrementAndGet();
+        if (result == Protocol.PLAYER1_WON) {
+            player1Wins.increment();
+        }
+        else if (result == Protocol.PLAYER2_WON) {
+            player2Wins.increment();
+        }
+        else if (result == Protocol.DRAW) {
+            ties.increment();
+        }
+        else {
+            abandoned.increment();
+        }
+        sessionDuration.record(durationNanos);
+    }
+
+    /**
+     * Called when a session couldn't be started because the server is full
+     */
+    public void gameRejected() {
+        gamesRejected.increment();
+    }
+
+    /**
+     * Called each time a player's move has been handled
+     *
+     * @param handlingNanos How long it took from receiving the move to sending out the status
+     */
+    public void moveMade(long handlingNanos) {
+        moves.increment();
+        moveLatency.record(handlingNanos);
+    }
+
+    /**
+     * Called when a player tries to drop a piece in a full column or one
+     * that isn't on the board
+     */
+    public void moveRejected() {
+        illegalMoves.increment();
+    }
+
+    /**
+     * @return Returns the number of games being played right now
+     */
+    public int getActiveGames() {
+        return activeGames.get();
+    }
+
+    /**
+     * @return Returns the number of players that have connected since the server started
+     */
+    public long getConnectionsAccepted() {
+        return connectionsAccepted.sum();
+    }
+
+    /**
+     * @return Returns the number of games started since the server started
+     */
+    public long getGamesStarted() {
+        return gamesStarted.sum();
+    }
+
+    /**
+     * @return Returns the number of games turned away because the server was full
+     */
+    public long getGamesRejected() {
+        return gamesRejected.sum();
+    }
+
+    /**
+     * @return Returns the number of games player 1 won
+     */
+    public long getPlayer1Wins() {
+        return player1Wins.sum();
+    }
+
+    /**
+     * @return Returns the number of games player 2 won
+     */
+    public long getPlayer2Wins() {
+        return player2Wins.sum();
+    }
+
+    /**
+     * @return Returns the number of games that ended in a tie
+     */
+    public long getTies() {
+        return ties.sum();
+    }
+
+    /**
+     * @return Returns the number of games that ended because a player left
+     */
+    public long getAbandoned() {
+        return abandoned.sum();
+    }
+
+    /**
+     * @return Returns the number of moves made since the server started
+     */
+    public long getMoves() {
+        return moves.sum();
+    }
+
+    /**
+     * @return Returns the number of moves turned away because they weren't legal
+     */
+    public long getIllegalMoves() {
+        return illegalMoves.sum();
+    }
+
+    /**
+     * @return Returns the median time to handle a move, in microseconds
+     */
+    public long getMoveLatencyP50Micros() {
+        return moveLatency.percentileMicros(50);
+    }
+
+    /**
+     * @return Returns the 99th percentile time to handle a move, in microseconds
+     */
+    public long getMoveLatencyP99Micros() {
+        return moveLatency.percentileMicros(99);
+    }
+
+    /**
+     * @return Returns the median session length, in milliseconds
+     */
+    public long getSessionDurationP50Millis() {
+        return sessionDuration.percentileMicros(50) / 1000;
+    }
+
+    /**
+     * @return Returns the 99th percentile session length, in milliseconds
+     */
+    public long getSessionDurationP99Millis() {
+        return sessionDuration.percentileMicros(99) / 1000;
+    }
+
+    /**
+     * @return Returns the histogram of how long moves take to handle
+     */
+    public LatencyHistogram getMoveLatency() {
+        return moveLatency;
+    }
+
+    /**
+     * @return Returns the histogram of how long sessions last
+     */
+    public LatencyHistogram getSessionDuration() {
+        return sessionDuration;
+    }
+
+    /**
+     * Works out how many moves were made per second since the last time
+     * this was called.
+     *
+     * @return Returns the moves per second over the last sample
+     */
+    public synchronized double sampleMovesPerSecond() {
+        long now = System.nanoTime();
+        long total = moves.sum();
+        double seconds = (now - lastSampleTime) / 1e9;
+        double rate = seconds > 0 ? (total - lastSampleMoves) / seconds : 0;
+        lastSampleTime = now;
+        lastSampleMoves = total;
+        return rate;
+    }
+
+    /**
+     * Writes every metric as a "name value" line. Counters only go up, so
+     * rates such as moves per second or wins per minute come from comparing
+     * two readings.
+     *
+     * @return Returns the metrics as text
+     */
+    public String toText() {
+        StringBuilder text = new StringBuilder(1024);
+        line(text, "connect4_connections_accepted_total", getConnectionsAccepted());
+        line(text, "connect4_active_sessions", getActiveGames());
+        line(text, "connect4_sessions_started_total", getGamesStarted());
+        line(text, "connect4_sessions_rejected_total", getGamesRejected());
+        line(text, "connect4_games_player1_won_total", getPlayer1Wins());
+        line(text, "connect4_games_player2_won_total", getPlayer2Wins());
+        line(text, "connect4_games_tied_total", getTies());
+        line(text, "connect4_games_abandoned_total", getAbandoned());
+        line(text, "connect4_moves_total", getMoves());
+        line(text, "connect4_moves_illegal_total", getIllegalMoves());
+        histogram(text, "connect4_move_latency_micros", moveLatency, 1);
+        histogram(text, "connect4_session_duration_millis", sessionDuration, 1000);
+        return text.toString();
+    }
+
+    private static void histogram(StringBuilder text, String name, LatencyHistogram histogram, long divisor) {
+        line(text, name + "_count", histogram.count());
+        line(text, name + "{quantile=\"0.5\"}", histogram.percentileMicros(50) / divisor);
+        line(text, name + "{quantile=\"0.99\"}", histogram.percentileMicros(99) / divisor);
+        line(text, name + "{quantile=\"1\"}", histogram.percentileMicros(100) / divisor);
+    }
+
+    private static void line(StringBuilder text, String name, long value) {
+        text.append(name).append(' ').append(value).append('\n');
+    }
+}
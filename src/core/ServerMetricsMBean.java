@@ -0,0 +1,38 @@
+package core;
+
+/**
+ * The ServerMetrics attributes that can be read through JMX
+ *
+ * @author Kelly Ellis
+ * @version 1.0
+ */
+public interface ServerMetricsMBean {
+
+    int getActiveGames();
+
+    long getConnectionsAccepted();
+
+    long getGamesStarted();
+
+    long getGamesRejected();
+
+    long getPlayer1Wins();
+
+    long getPlayer2Wins();
+
+    long getTies();
+
+    long getAbandoned();
+
+    long getMoves();
+
+    long getIllegalMoves();
+
+    long getMoveLatencyP50Micros();
+
+    long getMoveLatencyP99Micros();
+
+    long getSessionDurationP50Millis();
+
+    long getSessionDurationP99Millis();
+}
@@ -0,0 +1,139 @@
+package core;
+
+/**
+ * This class is the game board for a session on the Connect4 Server.
+ * Players only send the column, and the piece drops to the lowest empty spot
+ * in it the same way it would on a real board.
+ *
+ * Each player's pieces are kept as a bitboard. When a piece is placed only
+ * the 4 lines through it are checked for a win, and the number of pieces is
+ * counted so checking for a full board doesn't scan anything. Variants
+ * that aren't the standard size are played on a VariantBoard instead.
+ *
+ * @author Kelly Ellis, Hassan/Bansal
+ * @version 1.0
+ */
+public class SessionBoard {
+
+    /** Returned by drop when the move isn't legal */
+    public static final int ILLEGAL = -1;
+
+    private final int rows;
+    // how many pieces are in each column
+    private final int[] heights;
+    private long xStones;
+    private long oStones;
+    private int moves;
+    private char winner = ' ';
+    // the board for any other size, or null for the standard game
+    private final VariantBoard variant;
+    // each move in order as Protocol.packMove, for the game log and for resuming
+    private final byte[] moveList;
+
+    /**
+     * Creates an empty standard game board
+     */
+    public SessionBoard() {
+        this(Rules.STANDARD);
+    }
+
+    /**
+     * Creates an empty game board for a variant
+     *
+     * @param rules The size of the board and how many in a row win
+     */
+    public SessionBoard(Rules rules) {
+        variant = rules.isStandard() ? null : new VariantBoard(rules);
+        rows = rules.getHeight();
+        heights = new int[rules.getWidth()];
+        moveList = new byte[rules.getCells()];
+    }
+
+    /**
+     * Drops a player's game piece into a column. The height of each column is
+     * kept, so finding the row and checking the move is legal takes no search.
+     *
+     * @param column The column the player chose, starting at 0
+     * @param token The player's game piece - X or O
+     * @return Returns the row the piece landed in, where 0 is the top row, or
+     * ILLEGAL if the column is full or not on the board
+     */
+    public int drop(int column, char token) {
+        if (column < 0 || column >= heights.length || heights[column] == rows) {
+            return ILLEGAL;
+        }
+        int row = rows - 1 - heights[column]++;
+        moveList[moves++] = (byte) Protocol.packMove(row, column);
+        if (variant != null) {
+            variant.drop(token, column);
+            return row;
+        }
+
+        long cell = BitBoard.cellMask(row, column);
+        long stones;
+        if (token == 'X') {
+            stones = xStones |= cell;
+        }
+        else {
+            stones = oStones |= cell;
+        }
+        if (winner == ' ' && BitBoard.winsThrough(stones, cell)) {
+            winner = token;
+        }
+        return row;
+    }
+
+    /**
+     * Checks for a tie
+     *
+     * @return Returns true if the game board is full and there is a tie.
+     * Returns false otherwise.
+     */
+    public boolean isFull() {
+        return moves == moveList.length;
+    }
+
+    /**
+     * Checks for a win. The win is found when the winning piece is placed,
+     * so this doesn't look at the board again.
+     *
+     * @param token Takes in the player's game piece - X or O
+     * @return Returns true if there is a win, false otherwise.
+     */
+    public boolean isWon(char token) {
+        return variant != null ? variant.isWin(token) : winner == token;
+    }
+
+    /**
+     * @return Returns how many pieces are on the board
+     */
+    public int moveCount() {
+        return moves;
+    }
+
+    /**
+     * @return Returns the column of each move so far, in the order they were played
+     */
+    public byte[] columns() {
+        byte[] columns = new byte[moves];
+        for (int i = 0; i < moves; i++) {
+            columns[i] = (byte) (moveList[i] & 0xF);
+        }
+        return columns;
+    }
+
+    /**
+     * @param i The move, where 0 is the first move of the game
+     * @return Returns the move's row and column packed the way Protocol.packMove does
+     */
+    public byte packedMove(int i) {
+        return moveList[i];
+    }
+
+    /**
+     * @return Returns the player whose turn it is, 1 or 2. Player 1 always moves first.
+     */
+    public int playerToMove() {
+        return moves % 2 == 0 ? 1 : 2;
+    }
+}
@@ -0,0 +1,409 @@
+package core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * This class lets spectators watch games on the Connect4 Server. A spectator
+ * connects, sends WATCH with a session number (or 0 for the newest game), and
+ * gets hello with player 0, the rules and a snapshot of the game so far, then
+ * the same STATUS_MOVE events the players get.
+ *
+ * Each game has a Broadcast that the session appends its events to. An event
+ * is encoded once, into an array only the session writes to, and every
+ * watcher is written from that same array. A watcher is only a position in
+ * the array, so a game with thousands of watchers doesn't hold thousands of
+ * copies of anything. The session never waits for watchers: appending is a
+ * few bytes and a volatile write, and one spectator thread does all the
+ * writing to watchers.
+ *
+ * A watcher who falls more than MAX_LAG_EVENTS behind is sent a snapshot
+ * instead of everything they missed, and one whose connection won't take
+ * anything for STALL_SECONDS is dropped.
+ *
+ * @author Kelly Ellis
+ * @version 1.0
+ */
+public class SpectatorHub implements Runnable {
+
+    // A watcher this many events behind gets a snapshot instead
+    public static final int MAX_LAG_EVENTS = 8;
+    // A watcher whose connection takes nothing for this long is dropped
+    public static final int STALL_SECONDS = 10;
+
+    private static final long SWEEP_MILLIS = 250;
+    // Every event a session appends is a frame of 2 or 3 bytes
+    private static final int EVENT_BYTES = 3;
+
+    private final Consumer<String> log;
+    private final Selector selector;
+    private final ConcurrentHashMap<Long, Broadcast> games = new ConcurrentHashMap<>();
+    // Spectators that asked to watch but haven't reached the spectator thread yet
+    private final Queue<Watcher> arrivals = new ConcurrentLinkedQueue<>();
+    // Games with new events since the spectator thread last looked
+    private final Queue<Broadcast> changed = new ConcurrentLinkedQueue<>();
+    private final List<Broadcast> watched = new ArrayList<>();
+    private final FrameWriter frame = new FrameWriter();
+    private volatile long newest;
+    private volatile int watchers;
+
+    /**
+     * Creates the hub. Nobody is written to until start() is called.
+     *
+     * @param log Where to send the hub's messages
+     * @throws IOException If a selector can't be opened
+     */
+    public SpectatorHub(Consumer<String> log) throws IOException {
+        this.log = log;
+        this.selector = Selector.open();
+    }
+
+    /**
+     * Starts the spectator thread
+     */
+    public void start() {
+        Thread thread = new Thread(this, "connect4-spectators");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Makes a game watchable. Called by a session when it starts.
+     *
+     * @param sessionNo The session's number, which spectators ask for
+     * @param rules The rules the game is played by
+     * @return Returns the broadcast the session appends its events to
+     */
+    public Broadcast open(long sessionNo, Rules rules) {
+        Broadcast broadcast = new Broadcast(this, sessionNo, rules);
+        games.put(sessionNo, broadcast);
+        newest = sessionNo;
+        return broadcast;
+    }
+
+    /**
+     * Adds a spectator to a game. This can be called from any thread and doesn't wait.
+     *
+     * @param channel The spectator's connection, in non-blocking mode
+     * @param sessionNo The game to watch, or 0 for the newest game
+     */
+    public void watch(SocketChannel channel, long sessionNo) {
+        Broadcast broadcast = games.get(sessionNo == 0 ? newest : sessionNo);
+        if (broadcast == null) {
+            // no such game, or it's over
+            closeQuietly(channel);
+            return;
+        }
+        arrivals.add(new Watcher(broadcast, channel));
+        selector.wakeup();
+    }
+
+    /**
+     * @return Returns how many spectators are watching a game right now
+     */
+    public int getWatchers() {
+        return watchers;
+    }
+
+    public void run() {
+        long nextSweep = System.nanoTime();
+        while (true) {
+            try {
+                selector.select(SWEEP_MILLIS);
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (key.isValid()) {
+                        push((Watcher) key.attachment());
+                    }
+                }
+
+                Watcher arrival;
+                while ((arrival = arrivals.poll()) != null) {
+                    attach(arrival);
+                }
+                Broadcast broadcast;
+                while ((broadcast = changed.poll()) != null) {
+                    broadcast.queued.set(false);
+                    for (int i = broadcast.watchers.size() - 1; i >= 0; i--) {
+                        push(broadcast.watchers.get(i));
+                    }
+                }
+
+                long now = System.nanoTime();
+                if (now >= nextSweep) {
+                    sweep(now);
+                    nextSweep = now + TimeUnit.MILLISECONDS.toNanos(SWEEP_MILLIS);
+                }
+            }
+            catch (IOException ex) {
+                log.accept("Spectator hub failed: " + ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Starts a new spectator off with a snapshot of the game
+     */
+    private void attach(Watcher watcher) {
+        try {
+            watcher.key = watcher.channel.register(selector, 0, watcher);
+        }
+        catch (IOException ex) {
+            closeQuietly(watcher.channel);
+            return;
+        }
+        Broadcast broadcast = watcher.broadcast;
+        if (broadcast.watchers.isEmpty()) {
+            watched.add(broadcast);
+        }
+        broadcast.watchers.add(watcher);
+        // the game's thread checks this after appending, so it wakes the hub from now on
+        broadcast.watching = broadcast.watchers.size();
+        watchers++;
+        watcher.resync = true;
+        push(watcher);
+    }
+
+    /**
+     * Writes whatever a spectator hasn't seen yet, as much as their
+     * connection takes without waiting
+     */
+    private void push(Watcher watcher) {
+        if (watcher.closed) {
+            return;
+        }
+        Broadcast broadcast = watcher.broadcast;
+        long written = 0;
+        try {
+            int end = broadcast.end;
+            if (watcher.pending == null && (watcher.resync || end - watcher.position > MAX_LAG_EVENTS * EVENT_BYTES)) {
+                int frameStart = frameStart(broadcast.events, watcher.position);
+                if (frameStart == watcher.position) {
+                    // start over from a snapshot instead of sending everything missed
+                    watcher.pending = snapshot(broadcast, end);
+                    watcher.position = end;
+                    watcher.resync = false;
+                }
+                else {
+                    // finish the frame the connection is partway through first
+                    end = frameStart;
+                }
+            }
+            if (watcher.pending != null) {
+                written += watcher.channel.write(watcher.pending);
+                if (!watcher.pending.hasRemaining()) {
+                    watcher.pending = null;
+                }
+            }
+            if (watcher.pending == null && watcher.position < end) {
+                ByteBuffer view = broadcast.view;
+                view.limit(end).position(watcher.position);
+                int n = watcher.channel.write(view);
+                watcher.position += n;
+                written += n;
+            }
+        }
+        catch (IOException ex) {
+            detach(watcher);
+            return;
+        }
+
+        // read before end, so a finished game's last events are always seen
+        boolean over = broadcast.finished;
+        if (watcher.pending != null || watcher.position < broadcast.end) {
+            // wait for the connection to take more
+            watcher.key.interestOps(SelectionKey.OP_WRITE);
+            if (written > 0 || watcher.stalledSince == 0) {
+                watcher.stalledSince = System.nanoTime();
+            }
+        }
+        else {
+            watcher.key.interestOps(0);
+            watcher.stalledSince = 0;
+            if (over) {
+                // seen the whole game
+                detach(watcher);
+            }
+        }
+    }
+
+    /**
+     * @return Returns where the first frame at or after position starts
+     */
+    private static int frameStart(byte[] events, int position) {
+        int i = 0;
+        while (i < position) {
+            i += 1 + events[i];
+        }
+        return i;
+    }
+
+    /**
+     * Encodes hello, the rules and every move up to end into one frame,
+     * followed by the final status if the game is over by then
+     */
+    private ByteBuffer snapshot(Broadcast broadcast, int end) {
+        SessionBoard board = new SessionBoard(broadcast.rules);
+        int status = Protocol.CONTINUE;
+        byte[] events = broadcast.events;
+        for (int i = 0; i < end; i += 1 + events[i]) {
+            int header = events[i + 1] & 0xFF;
+            status = header & 0xF;
+            if (header >>> 4 == Protocol.STATUS_MOVE) {
+                int move = events[i + 2] & 0xFF;
+                board.drop(move & 0xF, board.playerToMove() == 1 ? 'X' : 'O');
+            }
+        }
+        ByteBuffer out = ByteBuffer.allocate(2 * (1 + Protocol.MAX_FRAME));
+        frame.hello(0).rules(broadcast.rules).snapshot(board.playerToMove(), board).flushTo(out);
+        if (status != Protocol.CONTINUE) {
+            frame.status(status).flushTo(out);
+        }
+        out.flip();
+        return out;
+    }
+
+    /**
+     * Drops spectators whose connections haven't taken anything for too long
+     */
+    private void sweep(long now) {
+        for (int i = watched.size() - 1; i >= 0; i--) {
+            Broadcast broadcast = watched.get(i);
+            for (int j = broadcast.watchers.size() - 1; j >= 0; j--) {
+                Watcher watcher = broadcast.watchers.get(j);
+                if (watcher.stalledSince != 0 && now - watcher.stalledSince > TimeUnit.SECONDS.toNanos(STALL_SECONDS)) {
+                    detach(watcher);
+                }
+            }
+        }
+    }
+
+    private void detach(Watcher watcher) {
+        watcher.closed = true;
+        watcher.key.cancel();
+        closeQuietly(watcher.channel);
+        Broadcast broadcast = watcher.broadcast;
+        broadcast.watchers.remove(watcher);
+        broadcast.watching = broadcast.watchers.size();
+        if (broadcast.watchers.isEmpty()) {
+            watched.remove(broadcast);
+        }
+        watchers--;
+    }
+
+    private static void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        }
+        catch (IOException ex) {
+            // already closed
+        }
+    }
+
+    /**
+     * The events of one game. Only the game's session appends to it, and
+     * only the spectator thread reads it, up to the end the session published.
+     */
+    public static class Broadcast {
+        private final SpectatorHub hub;
+        private final long sessionNo;
+        private final Rules rules;
+        // every event of the game as frames, encoded once and written to every watcher from here
+        private final byte[] events;
+        private final ByteBuffer out;
+        private final ByteBuffer view;
+        private final FrameWriter frame = new FrameWriter();
+        private final AtomicBoolean queued = new AtomicBoolean();
+        // only used on the spectator thread
+        private final List<Watcher> watchers = new ArrayList<>();
+        private volatile int end;
+        private volatile int watching;
+        private volatile boolean finished;
+
+        Broadcast(SpectatorHub hub, long sessionNo, Rules rules) {
+            this.hub = hub;
+            this.sessionNo = sessionNo;
+            this.rules = rules;
+            // one event per move and one more if the game is abandoned
+            events = new byte[(rules.getCells() + 1) * EVENT_BYTES];
+            out = ByteBuffer.wrap(events);
+            view = ByteBuffer.wrap(events);
+        }
+
+        /**
+         * Adds a move to the game, as the same event the other player gets
+         *
+         * @param status The game status after the move
+         * @param row The row the piece landed in
+         * @param column The column the piece was dropped in
+         */
+        public void move(int status, int row, int column) {
+            frame.statusMove(status, row, column).flushTo(out);
+            publish(status != Protocol.CONTINUE);
+        }
+
+        /**
+         * Ends the game. A game that was won or tied already sent its last
+         * status with the last move, so only abandoned games add an event.
+         *
+         * @param result How the game ended, as in GameRecord
+         */
+        public void finish(int result) {
+            if (finished) {
+                return;
+            }
+            if (result == GameRecord.ABANDONED) {
+                frame.status(Protocol.ABANDONED).flushTo(out);
+            }
+            publish(true);
+        }
+
+        private void publish(boolean over) {
+            // end goes first, so a game is never seen as finished without its last events
+            end = out.position();
+            if (over) {
+                finished = true;
+                hub.games.remove(sessionNo, this);
+            }
+            if (watching > 0 && queued.compareAndSet(false, true)) {
+                hub.changed.add(this);
+                hub.selector.wakeup();
+            }
+        }
+    }
+
+    /**
+     * One spectator's connection and how far through the game's events they are
+     */
+    private static class Watcher {
+        private final Broadcast broadcast;
+        private final SocketChannel channel;
+        private SelectionKey key;
+        private int position;
+        // a snapshot still being written
+        private ByteBuffer pending;
+        private boolean resync;
+        // when the connection last took something while the watcher was behind, 0 if caught up
+        private long stalledSince;
+        private boolean closed;
+
+        Watcher(Broadcast broadcast, SocketChannel channel) {
+            this.broadcast = broadcast;
+            this.channel = channel;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package core;
+
+import java.util.Arrays;
+
+/**
+ * This class is the transposition table used by the computer player's search.
+ * It's a fixed-size long array where each entry is 2 longs: the position key
+ * xor'd with the data, then the data. Threads can share a table without locks,
+ * because an entry that was half written by another thread won't match its key
+ * and is just treated as empty.
+ *
+ * @author Kelly Ellis
+ * @version 1.0
+ */
+public final class TranspositionTable {
+
+    private final long[] table;
+    private final int shift;
+
+    /**
+     * Creates a table with 2^bits entries
+     *
+     * @param bits The log2 of the number of entries
+     */
+    public TranspositionTable(int bits) {
+        table = new long[2 << bits];
+        shift = 64 - bits;
+    }
+
+    /**
+     * Looks up a position
+     *
+     * @param key The position's key
+     * @return Returns the data stored for the position, or 0 if it isn't in the table
+     */
+    public long probe(long key) {
+        int index = indexFor(key);
+        long data = table[index + 1];
+        if ((table[index] ^ data) != key) {
+            return 0;
+        }
+        return data;
+    }
+
+    /**
+     * Stores a position, replacing whatever was in its entry
+     *
+     * @param key The position's key
+     * @param data The data to store, which must not be 0
+     */
+    public void store(long key, long data) {
+        int index = indexFor(key);
+        table[index] = key ^ data;
+        table[index + 1] = data;
+    }
+
+    /**
+     * Empties the table
+     */
+    public void clear() {
+        Arrays.fill(table, 0);
+    }
+
+    private int indexFor(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> shift) << 1;
+    }
+}
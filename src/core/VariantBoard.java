@@ -0,0 +1,210 @@
+package core;
+
+import java.util.Arrays;
+
+/**
+ * This class is the game board for variants that aren't the standard 7x6
+ * game, such as 9x7 with 5 in a row. Boards this size don't fit in a long,
+ * so the spots are kept in a byte array instead of a bitboard.
+ *
+ * The array has a wall of spots around the board that never match a piece.
+ * Each column is stored in order from the bottom up, so the 4 directions
+ * through a spot are always the same steps through the array: 1 for a
+ * column, a column's length for a row, and one less or one more than that
+ * for the diagonals. These steps are worked out once when the board is made.
+ * Checking for a win then only looks at the spots in line with the new piece,
+ * and stops at the wall, so it takes the same time on any size of board.
+ *
+ * @author Kelly Ellis
+ * @version 1.0
+ */
+public final class VariantBoard {
+
+    private static final byte EMPTY = 0;
+    private static final byte X = 1;
+    private static final byte O = 2;
+    private static final byte WALL = 3;
+
+    private final Rules rules;
+    // length of one column in the array, including the wall above and below it
+    private final int stride;
+    // the array steps for a column, a row and the two diagonals
+    private final int[] directions;
+    private final byte[] cells;
+    private final int[] heights;
+    private int moves;
+    private char winner = ' ';
+
+    /**
+     * Creates an empty board
+     *
+     * @param rules The size of the board and how many in a row win
+     */
+    public VariantBoard(Rules rules) {
+        this.rules = rules;
+        stride = rules.getHeight() + 2;
+        directions = new int[] {1, stride, stride - 1, stride + 1};
+        cells = new byte[(rules.getWidth() + 2) * stride];
+        heights = new int[rules.getWidth()];
+        reset();
+    }
+
+    /**
+     * Empties the board so a new game can be played
+     */
+    public void reset() {
+        Arrays.fill(cells, WALL);
+        for (int column = 0; column < rules.getWidth(); column++) {
+            for (int row = 0; row < rules.getHeight(); row++) {
+                cells[index(row, column)] = EMPTY;
+            }
+            heights[column] = 0;
+        }
+        moves = 0;
+        winner = ' ';
+    }
+
+    /**
+     * @return Returns the rules this board is played by
+     */
+    public Rules getRules() {
+        return rules;
+    }
+
+    /**
+     * Checks if a piece can be dropped into a column
+     *
+     * @param column The column, starting at 0
+     * @return Returns true if the column has an empty spot
+     */
+    public boolean canPlay(int column) {
+        return heights[column] < rules.getHeight();
+    }
+
+    /**
+     * Drops a game piece into the top-most empty spot of a column
+     *
+     * @param player The player's game piece, either X or O
+     * @param column The column, starting at 0
+     * @return Returns true if the piece was dropped, false if the column is full
+     */
+    public boolean drop(char player, int column) {
+        if (!canPlay(column)) {
+            return false;
+        }
+        put(index(heights[column]++, column), player);
+        return true;
+    }
+
+    /**
+     * Takes the top-most game piece back out of a column. A game ends on its
+     * first win, so taking a piece back always clears the winner.
+     *
+     * @param column The column, starting at 0
+     * @return Returns true if a piece was removed, false if the column is empty
+     */
+    public boolean undo(int column) {
+        if (heights[column] == 0) {
+            return false;
+        }
+        cells[index(--heights[column], column)] = EMPTY;
+        moves--;
+        winner = ' ';
+        return true;
+    }
+
+    /**
+     * @param column The column, starting at 0
+     * @return Returns how many pieces are in the column
+     */
+    public int columnHeight(int column) {
+        return heights[column];
+    }
+
+    /**
+     * Gets the game piece at a spot on the board
+     *
+     * @param row The row, where 0 is the top row
+     * @param column The column, starting at 0
+     * @return Returns X or O if the spot is taken, or a space if it's empty
+     */
+    public char pieceAt(int row, int column) {
+        byte piece = cells[index(rules.getHeight() - 1 - row, column)];
+        return piece == X ? 'X' : piece == O ? 'O' : ' ';
+    }
+
+    /**
+     * @param player The player's game piece, either X or O
+     * @return Returns true if that player has won
+     */
+    public boolean isWin(char player) {
+        return winner == player;
+    }
+
+    /**
+     * @return Returns true if there is a winner
+     */
+    public boolean hasWinner() {
+        return winner != ' ';
+    }
+
+    /**
+     * @return Returns the player who got enough in a row first, or a space if nobody has
+     */
+    public char getWinner() {
+        return winner;
+    }
+
+    /**
+     * @return Returns true if every spot on the board is taken
+     */
+    public boolean isFull() {
+        return moves == rules.getCells();
+    }
+
+    /**
+     * @return Returns how many pieces are on the board
+     */
+    public int moveCount() {
+        return moves;
+    }
+
+    private void put(int cell, char player) {
+        byte piece = player == 'X' ? X : O;
+        cells[cell] = piece;
+        moves++;
+        if (winner == ' ' && winsThrough(cell, piece)) {
+            winner = player;
+        }
+    }
+
+    /**
+     * Counts the pieces in line with a new piece along each direction.
+     * The walk always stops at the wall, so it never needs a bounds check.
+     */
+    private boolean winsThrough(int cell, byte piece) {
+        int connect = rules.getConnect();
+        for (int step : directions) {
+            int count = 1;
+            for (int i = cell + step; cells[i] == piece; i += step) {
+                count++;
+            }
+            for (int i = cell - step; cells[i] == piece; i -= step) {
+                count++;
+            }
+            if (count >= connect) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param row The row counted from the bottom, starting at 0
+     * @param column The column, starting at 0
+     * @return Returns the spot's place in the array
+     */
+    private int index(int row, int column) {
+        return (column + 1) * stride + row + 1;
+    }
+}
@@ -0,0 +1,46 @@
+package core;
+
+import java.util.SplittableRandom;
+
+/**
+ * This class holds the random numbers used for Zobrist hashing. Every piece
+ * a player can have on every spot of the biggest board has its own random
+ * 64-bit number, and a position's hash is the XOR of the numbers of its
+ * pieces. Dropping a piece or taking it back changes the hash with one XOR,
+ * so a game can keep its hash up to date as it's played.
+ *
+ * The numbers come from a fixed seed, so the same position has the same hash
+ * in every run and hashes can be kept on disk.
+ *
+ * @author Kelly Ellis
+ * @version 1.0
+ */
+public final class Zobrist {
+
+    private static final int SPOTS = Rules.MAX_SIZE * Rules.MAX_SIZE;
+    private static final long[] KEYS = makeKeys();
+
+    private Zobrist() {
+    }
+
+    /**
+     * Gets the number for one piece on one spot
+     *
+     * @param player The player's game piece, either X or O
+     * @param row The row counted from the bottom, starting at 0
+     * @param column The column, starting at 0
+     * @return Returns the number to XOR into the hash when the piece is dropped or taken back
+     */
+    public static long piece(char player, int row, int column) {
+        return KEYS[(player == 'X' ? 0 : SPOTS) + row * Rules.MAX_SIZE + column];
+    }
+
+    private static long[] makeKeys() {
+        SplittableRandom random = new SplittableRandom(0x436F6E6E65637434L);
+        long[] keys = new long[2 * SPOTS];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = random.nextLong();
+        }
+        return keys;
+    }
+}
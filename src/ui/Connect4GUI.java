@@ -1,4 +1,5 @@
 package ui;
+import core.BoardStyle;
 import core.Connect4;
 import core.Connect4ComputerPlayer;
 import javafx.animation.TranslateTransition;
@@ -7,7 +8,6 @@ import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Alert.AlertType;
-import javafx.scene.effect.InnerShadow;
 import javafx.scene.layout.Pane;
 import javafx.scene.layout.StackPane;
 import javafx.scene.paint.Color;
@@ -33,9 +33,12 @@ public class Connect4GUI extends Application{
     private boolean turnSwitch;
     private Piece[][] board = new Piece[7][6];
     private Pane pane = new Pane();
+    // every disc of a game, made once and shown as they're dropped
+    private Piece[] pieces = new Piece[42];
+    private int piecesDropped;
 
     Connect4 connect4 = new Connect4();
-    Connect4ComputerPlayer computer = new Connect4ComputerPlayer();
+    Connect4ComputerPlayer computer = new Connect4ComputerPlayer(connect4);
 
     /**
      * Sets up the Pane for the game and puts everything on it. For Player Vs. Computer game.
@@ -68,18 +71,11 @@ public class Connect4GUI extends Application{
                 circle.setTranslateY(y * 105 + 25);
 
                 board = Shape.subtract(board, circle);
-
-                InnerShadow effect = new InnerShadow();
-                effect.setOffsetX(10.0f);
-
-                board.setEffect(effect);
-
-                StackPane stack = new StackPane();
-                stack.getChildren().addAll(circle, board);
             }
         }
+        board.setEffect(BoardStyle.BOARD_SHADOW);
         board.setFill(Color.DARKBLUE);
-        return board;
+        return BoardStyle.cache(board);
     }
 
     /**
@@ -98,13 +94,13 @@ public class Connect4GUI extends Application{
             Rectangle columnSelected = new Rectangle(100, 700);
             columnSelected.setTranslateX(x * (105) + 25);
             columnSelected.setFill(Color.TRANSPARENT);
-            columnSelected.setOnMouseEntered(e -> columnSelected.setFill(Color.rgb(50, 200, 50, 0.3)));
+            columnSelected.setOnMouseEntered(e -> columnSelected.setFill(BoardStyle.HIGHLIGHT));
             columnSelected.setOnMouseExited(e -> columnSelected.setFill(Color.TRANSPARENT));
 
             // Drops piece and plays game when column is clicked
             final int column = x;
             columnSelected.setOnMouseClicked(e -> {
-                dropPiece(new Piece(redTurn), column);
+                dropPiece(nextPiece(redTurn), column);
                 turnSwitch = !turnSwitch;
                 char playerTurn;
                 if (turnSwitch) {
@@ -143,7 +139,7 @@ public class Connect4GUI extends Application{
 
                 int col = computer.chooseColumn();
                 computer.dropComputerPiece('O', col + 1); // background game
-                dropPiece(new Piece(!redTurn), col);
+                dropPiece(nextPiece(!redTurn), col);
 
                 if (connect4.checkWin()) {
                     Alert alert = new Alert(AlertType.INFORMATION);
@@ -195,14 +191,44 @@ public class Connect4GUI extends Application{
             return;
 
         board[column][row] = piece;
-        pane.getChildren().add(piece);
+        if (piece == pieces[piecesDropped]) {
+            piecesDropped++;
+        }
+        else {
+            pane.getChildren().add(piece);
+        }
         piece.setTranslateX(column * 105 + 25);
+        piece.setTranslateY(0);
+        piece.setVisible(true);
 
         TranslateTransition drop = new TranslateTransition(Duration.seconds(0.7), piece);
         drop.setToY(row * 105 + 25);
         drop.play();
     }
 
+    /**
+     * Gets the next disc to drop. The discs are all put on the board hidden the
+     * first time, so dropping one only shows it and the board never grows.
+     *
+     * @param red Whether the disc is the red player's
+     * @return Returns the disc
+     */
+    public Piece nextPiece(boolean red) {
+        if (pieces[0] == null) {
+            for (int i = 0; i < pieces.length; i++) {
+                pieces[i] = new Piece(true);
+                pieces[i].setVisible(false);
+            }
+            pane.getChildren().addAll(pieces);
+        }
+        if (piecesDropped == pieces.length) {
+            return new Piece(red);
+        }
+        Piece piece = pieces[piecesDropped];
+        piece.setRed(red);
+        return piece;
+    }
+
     /**
      * Helper method for dropPiece method
      *
@@ -222,17 +248,25 @@ public class Connect4GUI extends Application{
      * Creates the game pieces that are dropped into the board.
      */
     public static class Piece extends Circle {
-        private final boolean red;
+        private boolean red;
         public Piece(boolean red) {
-            // change piece's color for each player
-            super(45, red ? Color.RED : Color.YELLOW);
-            this.red = red;
+            super(45);
+            setRed(red);
             setCenterX(50);
             setCenterY(50);
-            InnerShadow shadow = new InnerShadow();
-            shadow.setOffsetX(5.0f);
-            shadow.setOffsetY(5.0f);
-            setEffect(shadow);
+            setEffect(BoardStyle.DISC_SHADOW);
+            // moves as a bitmap during the drop instead of drawing the shadow every frame
+            BoardStyle.cache(this);
+        }
+
+        /**
+         * Changes the piece's color for each player
+         *
+         * @param red Whether the piece is the red player's
+         */
+        public void setRed(boolean red) {
+            this.red = red;
+            setFill(red ? BoardStyle.RED : BoardStyle.YELLOW);
         }
     }
 
@@ -265,14 +299,14 @@ public class Connect4GUI extends Application{
             Rectangle columnSelected = new Rectangle(100, 700);
             columnSelected.setTranslateX(x * (105) + 25);
             columnSelected.setFill(Color.TRANSPARENT);
-            columnSelected.setOnMouseEntered(e -> columnSelected.setFill(Color.rgb(50, 200, 50, 0.3)));
+            columnSelected.setOnMouseEntered(e -> columnSelected.setFill(BoardStyle.HIGHLIGHT));
             columnSelected.setOnMouseExited(e -> columnSelected.setFill(Color.TRANSPARENT));
 
 
             // Drop piece and play game when a column is clicked on
             final int column = x;
             columnSelected.setOnMouseClicked(e -> {
-                dropPiece(new Piece(redTurn), column);
+                dropPiece(nextPiece(redTurn), column);
                 turnSwitch = !turnSwitch;
                 char playerTurn;
                 if (turnSwitch) {
@@ -2,6 +2,7 @@ package ui;
 import core.Connect4;
 import core.Connect4ComputerPlayer;
 import core.Connect4Server;
+import core.Rules;
 import javafx.application.Application;
 
 
@@ -10,7 +11,8 @@ import java.util.Scanner;
 /**
  * This is the Connect4 game's console. It creates a new Connect4 board,
  * and allows 2 players to play the game, or 1 player to play against
- * the computer until someone wins or they tie.
+ * the computer until someone wins or they tie. Two players can play a
+ * variant set with -Dconnect4.rules, such as 9x7x5.
  *
  * @author Kelly Ellis
  * @version 1.0
@@ -18,8 +20,9 @@ import java.util.Scanner;
 public class Connect4TextConsole {
 
     public static void main(String[] args) {
-        Connect4 game = new Connect4();
+        Connect4 game = new Connect4(Rules.configured());
         boolean turnSwitch = true;
+        boolean won;
         Scanner input = new Scanner(System.in);
 
         System.out.println("Please enter 'G' if you'd like to play with the GUI, or enter " +
@@ -48,7 +51,8 @@ public class Connect4TextConsole {
                     } else {
                         player = 'X';
                     }
-                    System.out.println("Player " + player + " - your turn. Choose a column number from 1-7. ");
+                    System.out.println("Player " + player + " - your turn. Choose a column number from 1-" +
+                            game.getRules().getWidth() + ". ");
 
                     boolean position = false;
                     while (!position) {
@@ -69,11 +73,11 @@ public class Connect4TextConsole {
                     System.out.println();
                 }
                 // While there is no winner and no tie, keep printing the board.
-                while (!game.boardIsFull() && !game.checkWin());
+                while (!(won = game.checkWin()) && !game.boardIsFull());
                 game.printBoard();
 
                 // If someone wins, print which player won
-                if (game.checkWin()) {
+                if (won) {
                     System.out.printf("Player %s won the game.", (turnSwitch ? "O" : "X"));
                 }
                 // Otherwise, it must be a tie
@@ -86,6 +90,12 @@ public class Connect4TextConsole {
             // Computer playing
             else if (selection == 'C') {
                 System.out.println("Start game against the computer.");
+                if (!game.getRules().isStandard()) {
+                    System.out.println("The computer only plays the standard board, " +
+                            "so this game is 7x6 with 4 in a row.");
+                    game = new Connect4();
+                }
+                Connect4ComputerPlayer computer = new Connect4ComputerPlayer(game);
 
                 do {
                     // Switches the players each turn
@@ -117,8 +127,8 @@ public class Connect4TextConsole {
                         } else if (player == 'O') {
                             System.out.println("Computer's turn...");
                             try {
-                                int column = Connect4ComputerPlayer.chooseColumn();
-                                position = Connect4ComputerPlayer.dropComputerPiece('O', column);
+                                int column = computer.chooseColumn();
+                                position = computer.dropComputerPiece('O', column + 1);
                                 if (!position) {
                                     System.out.println("Column is full. The computer will choose again...");
 
@@ -132,11 +142,11 @@ public class Connect4TextConsole {
                 }
 
                 // While there is no winner and no tie, keep printing the board.
-                while (!game.boardIsFull() && !game.checkWin());
+                while (!(won = game.checkWin()) && !game.boardIsFull());
                 game.printBoard();
 
                 // If someone wins, print which player won
-                if (game.checkWin()) {
+                if (won) {
                     System.out.printf("%s won the game.", (turnSwitch ? "The computer" : "You"));
                 }
                 // Otherwise, it must be a tie
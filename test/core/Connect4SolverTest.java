@@ -0,0 +1,148 @@
+package core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Checks the solver's scores and best moves, with and without an endgame
+ * table, against a plain minimax over late positions small enough to search
+ * completely.
+ *
+ * @author Kelly Ellis
+ * @version 1.0
+ */
+class Connect4SolverTest {
+
+    private static final int BOARD_SIZE = BitBoard.WIDTH * BitBoard.HEIGHT;
+    private static final int POSITIONS = 40;
+    private static final int EMPTY = 12;
+
+    private final Map<Long, Integer> minimaxScores = new HashMap<>();
+
+    @Test
+    void solveMatchesMinimax() {
+        Connect4Solver solver = new Connect4Solver(20);
+        Random rand = new Random(1);
+        for (int i = 0; i < POSITIONS; i++) {
+            GameState state = randomPosition(rand);
+            assertEquals(minimax(state), solver.solve(state, toMove(state)));
+        }
+    }
+
+    @Test
+    void bestMoveReachesTheBestScore() {
+        Connect4Solver solver = new Connect4Solver(20);
+        Random rand = new Random(2);
+        for (int i = 0; i < POSITIONS; i++) {
+            GameState state = randomPosition(rand);
+            char player = toMove(state);
+            int column = solver.bestMove(state, player);
+            GameState after = new GameState(state);
+            after.drop(player, column);
+            int score = after.isWin(player) ? (BOARD_SIZE + 1 - state.moveCount()) / 2 : -minimax(after);
+            assertEquals(minimax(state), score);
+        }
+    }
+
+    @Test
+    void endgameTableGivesTheSameScores(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("endgame");
+        Random rand = new Random(3);
+        GameState[] states = new GameState[POSITIONS];
+        for (int i = 0; i < POSITIONS; i++) {
+            states[i] = randomPosition(rand);
+        }
+        try (EndgameTable endgame = EndgameTable.open(file, 16, EMPTY)) {
+            Connect4Solver solver = new Connect4Solver(20, endgame);
+            for (GameState state : states) {
+                assertEquals(minimax(state), solver.solve(state, toMove(state)));
+            }
+        }
+        // a new solver with an empty transposition table reads the stored scores back
+        try (EndgameTable endgame = EndgameTable.open(file, 16, EMPTY)) {
+            Connect4Solver solver = new Connect4Solver(20, endgame);
+            for (GameState state : states) {
+                assertEquals(minimax(state), solver.solve(state, toMove(state)));
+            }
+        }
+    }
+
+    @Test
+    void transpositionTableKeepsEntriesApart() {
+        // keys that differ only in their high bits must not all land in one entry
+        TranspositionTable table = new TranspositionTable(10);
+        for (long i = 1; i <= 256; i++) {
+            table.store(i << 40, i);
+        }
+        int kept = 0;
+        for (long i = 1; i <= 256; i++) {
+            if (table.probe(i << 40) == i) {
+                kept++;
+            }
+        }
+        assertTrue(kept > 200, kept + " of 256 kept");
+    }
+
+    /**
+     * Plays random moves that don't win until only EMPTY spots are left
+     */
+    private static GameState randomPosition(Random rand) {
+        while (true) {
+            GameState state = new GameState();
+            while (state.moveCount() < BOARD_SIZE - EMPTY) {
+                char player = toMove(state);
+                int column = rand.nextInt(BitBoard.WIDTH);
+                if (!state.canPlay(column)) {
+                    continue;
+                }
+                state.drop(player, column);
+                if (state.isWin(player)) {
+                    break;
+                }
+            }
+            if (!state.hasWinner()) {
+                return state;
+            }
+        }
+    }
+
+    private static char toMove(GameState state) {
+        return state.moveCount() % 2 == 0 ? 'X' : 'O';
+    }
+
+    /**
+     * Scores a position the same way the solver does, by trying every move
+     */
+    private int minimax(GameState state) {
+        Integer known = minimaxScores.get(state.canonicalKey());
+        if (known != null) {
+            return known;
+        }
+        int moves = state.moveCount();
+        if (moves == BOARD_SIZE) {
+            return 0;
+        }
+        char player = toMove(state);
+        int best = Integer.MIN_VALUE;
+        for (int column = 0; column < BitBoard.WIDTH; column++) {
+            if (!state.canPlay(column)) {
+                continue;
+            }
+            GameState child = new GameState(state);
+            child.drop(player, column);
+            int score = child.isWin(player) ? (BOARD_SIZE + 1 - moves) / 2 : -minimax(child);
+            best = Math.max(best, score);
+        }
+        minimaxScores.put(state.canonicalKey(), best);
+        return best;
+    }
+}
@@ -0,0 +1,170 @@
+package core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Checks the position index against a full scan of the log: while games are
+ * logged, when it's built from the log, and after it was left part way
+ * through a batch.
+ *
+ * @author Kelly Ellis
+ * @version 1.0
+ */
+class PositionIndexTest {
+
+    private static final int GAMES = 3000;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void liveIndexMatchesScan() throws IOException {
+        Path log = dir.resolve("games");
+        Path file = dir.resolve("positions");
+        writeGames(log, PositionIndex.open(file));
+        try (PositionIndex index = PositionIndex.open(file)) {
+            assertFalse(index.wasReset());
+            assertMatchesScan(index, log);
+        }
+    }
+
+    @Test
+    void updateBuildsTheSameIndex() throws IOException {
+        Path log = dir.resolve("games");
+        writeGames(log, null);
+        try (PositionIndex index = PositionIndex.open(dir.resolve("positions"))) {
+            assertEquals(GAMES, index.update(log));
+            assertMatchesScan(index, log);
+            assertEquals(0, index.update(log));
+        }
+    }
+
+    @Test
+    void unfinishedBatchIsRebuilt() throws IOException {
+        Path log = dir.resolve("games");
+        Path file = dir.resolve("positions");
+        writeGames(log, null);
+        try (PositionIndex index = PositionIndex.open(file);
+                GameLogReader reader = new GameLogReader(log)) {
+            long gameId = reader.offset();
+            for (int i = 0; i < GAMES / 2 && reader.next(); i++) {
+                index.add(gameId, reader.record());
+                gameId = reader.offset();
+            }
+            // closed without markIndexed, like a crash part way through a batch
+        }
+        try (PositionIndex index = PositionIndex.open(file)) {
+            assertTrue(index.wasReset());
+            assertEquals(0, index.getPositions());
+            assertEquals(GAMES, index.update(log));
+            assertMatchesScan(index, log);
+        }
+    }
+
+    @Test
+    void variantGamesAreNotIndexed() throws IOException {
+        Path log = dir.resolve("games");
+        Path file = dir.resolve("positions");
+        System.setProperty("connect4.gameLog", log.toString());
+        System.setProperty("connect4.positionIndex", file.toString());
+        List<String> messages = new ArrayList<>();
+        try (GameLog games = Connect4HeadlessServer.openGameLog(Rules.parse("7x6x5"), messages::add)) {
+            // player 1 wins with 5 in column 1, and every move would also fit on a 7x6 board
+            byte[] played = {0, 1, 0, 1, 0, 1, 0, 2, 0};
+            assertTrue(games.append(new GameRecord("player1", "player2", 0, played, Protocol.PLAYER1_WON)));
+        }
+        finally {
+            System.clearProperty("connect4.gameLog");
+            System.clearProperty("connect4.positionIndex");
+        }
+        try (PositionIndex index = PositionIndex.open(file)) {
+            assertEquals(0, index.getPositions());
+            assertEquals(0, index.getIndexedTo());
+        }
+        assertTrue(messages.stream().anyMatch(message -> message.startsWith("Not indexing positions")),
+                messages.toString());
+    }
+
+    /**
+     * Logs random games, some of them abandoned part way
+     */
+    private static void writeGames(Path log, PositionIndex index) throws IOException {
+        Random rand = new Random(1);
+        try (GameLog games = GameLog.open(log, index)) {
+            for (int i = 0; i < GAMES; i++) {
+                GameState state = new GameState();
+                byte[] columns = new byte[BitBoard.WIDTH * BitBoard.HEIGHT];
+                int moves = 0;
+                int result = GameRecord.ABANDONED;
+                int stopAt = rand.nextInt(10) == 0 ? rand.nextInt(columns.length) : columns.length;
+                while (moves < stopAt) {
+                    char player = moves % 2 == 0 ? 'X' : 'O';
+                    int column = rand.nextInt(BitBoard.WIDTH);
+                    if (!state.drop(player, column)) {
+                        continue;
+                    }
+                    columns[moves++] = (byte) column;
+                    if (state.isWin(player)) {
+                        result = player == 'X' ? Protocol.PLAYER1_WON : Protocol.PLAYER2_WON;
+                        break;
+                    }
+                    if (state.isFull()) {
+                        result = Protocol.DRAW;
+                    }
+                }
+                byte[] played = new byte[moves];
+                System.arraycopy(columns, 0, played, 0, moves);
+                while (!games.append(new GameRecord("player1", "player2", i, played, result))) {
+                    // the queue is full, let the writer catch up
+                    Thread.onSpinWait();
+                }
+            }
+        }
+    }
+
+    private static void assertMatchesScan(PositionIndex index, Path log) throws IOException {
+        Map<Long, int[]> counts = new HashMap<>();
+        Map<Long, List<Long>> ids = new HashMap<>();
+        try (GameLogReader reader = new GameLogReader(log)) {
+            long gameId = reader.offset();
+            while (reader.next()) {
+                GameState state = new GameState();
+                for (int i = 0; i < reader.getMoveCount(); i++) {
+                    state.drop(i % 2 == 0 ? 'X' : 'O', reader.getColumn(i));
+                    long key = state.canonicalKey();
+                    counts.computeIfAbsent(key, k -> new int[Protocol.DRAW + 1])[reader.getResult()]++;
+                    ids.computeIfAbsent(key, k -> new ArrayList<>()).add(gameId);
+                }
+                gameId = reader.offset();
+            }
+        }
+
+        assertEquals(counts.size(), index.getPositions());
+        long[] found = new long[GAMES];
+        for (Map.Entry<Long, int[]> position : counts.entrySet()) {
+            long key = position.getKey();
+            for (int result = GameRecord.ABANDONED; result <= Protocol.DRAW; result++) {
+                assertEquals(position.getValue()[result], index.count(key, result));
+            }
+            // newest first
+            List<Long> games = ids.get(key);
+            assertEquals(games.size(), index.gameIds(key, found));
+            for (int i = 0; i < games.size(); i++) {
+                assertEquals(games.get(games.size() - 1 - i), found[i]);
+            }
+        }
+    }
+}
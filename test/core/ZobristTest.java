@@ -0,0 +1,116 @@
+package core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that Connect4 keeps its Zobrist hashes right as pieces are dropped
+ * and taken back, and that the mirror-folded hash agrees with
+ * GameState.canonicalKey.
+ *
+ * @author Kelly Ellis
+ * @version 1.0
+ */
+class ZobristTest {
+
+    private static final int GAMES = 500;
+
+    @Test
+    void hashMatchesHashFromScratch() {
+        checkHashes(new Rules(7, 6, 4));
+        checkHashes(new Rules(9, 7, 5));
+    }
+
+    @Test
+    void mirroredGamesShareCanonicalHash() {
+        Random rand = new Random(2);
+        for (int game = 0; game < GAMES; game++) {
+            Connect4 played = new Connect4();
+            Connect4 mirrored = new Connect4();
+            char player = 'X';
+            while (!played.checkWin() && !played.boardIsFull()) {
+                int column = randomColumn(played, rand);
+                played.dropPiece(player, column + 1);
+                mirrored.dropPiece(player, BitBoard.WIDTH - column);
+                assertEquals(played.getCanonicalHash(), mirrored.getCanonicalHash());
+                player = player == 'X' ? 'O' : 'X';
+            }
+        }
+    }
+
+    @Test
+    void canonicalHashAgreesWithGameState() {
+        // two positions share a folded hash exactly when they share a canonical key
+        Map<Long, Long> byCanonicalKey = new HashMap<>();
+        Map<Long, Long> byHash = new HashMap<>();
+        Random rand = new Random(3);
+        for (int game = 0; game < GAMES; game++) {
+            Connect4 connect4 = new Connect4();
+            char player = 'X';
+            while (!connect4.checkWin() && !connect4.boardIsFull()) {
+                connect4.dropPiece(player, randomColumn(connect4, rand) + 1);
+                long key = connect4.getState().canonicalKey();
+                long hash = connect4.getCanonicalHash();
+                assertEquals(hash, (long) byCanonicalKey.computeIfAbsent(key, k -> hash));
+                assertEquals(key, (long) byHash.computeIfAbsent(hash, h -> key));
+                player = player == 'X' ? 'O' : 'X';
+            }
+        }
+        assertTrue(byCanonicalKey.size() > 5000, byCanonicalKey.size() + " positions");
+    }
+
+    private static void checkHashes(Rules rules) {
+        Random rand = new Random(1);
+        int[] columns = new int[rules.getCells()];
+        long[] hashes = new long[rules.getCells()];
+        for (int game = 0; game < GAMES; game++) {
+            Connect4 connect4 = new Connect4(rules);
+            char player = 'X';
+            int moves = 0;
+            while (!connect4.checkWin() && !connect4.boardIsFull()) {
+                int column = randomColumn(connect4, rand);
+                connect4.dropPiece(player, column + 1);
+                assertEquals(hashFromScratch(connect4), connect4.getHash());
+                columns[moves] = column;
+                hashes[moves++] = connect4.getHash();
+                player = player == 'X' ? 'O' : 'X';
+            }
+            // taking every piece back goes through the same hashes in reverse
+            for (int i = moves - 1; i >= 0; i--) {
+                assertEquals(hashes[i], connect4.getHash());
+                assertTrue(connect4.undoPiece(columns[i] + 1));
+            }
+            assertEquals(0, connect4.getHash());
+        }
+    }
+
+    private static long hashFromScratch(Connect4 connect4) {
+        Rules rules = connect4.getRules();
+        long hash = 0;
+        for (int row = 0; row < rules.getHeight(); row++) {
+            for (int column = 0; column < rules.getWidth(); column++) {
+                char piece = connect4.pieceAt(row, column);
+                if (piece != ' ') {
+                    hash ^= Zobrist.piece(piece, rules.getHeight() - 1 - row, column);
+                }
+            }
+        }
+        return hash;
+    }
+
+    private static int randomColumn(Connect4 connect4, Random rand) {
+        Rules rules = connect4.getRules();
+        int column;
+        do {
+            column = rand.nextInt(rules.getWidth());
+        }
+        while (connect4.columnHeight(column) == rules.getHeight());
+        return column;
+    }
+}